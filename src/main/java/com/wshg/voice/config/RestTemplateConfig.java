@@ -1,21 +1,138 @@
 package com.wshg.voice.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
- * RestTemplate 用于调用 vLLM HTTP 接口，超时设长一些（大模型生成可能较慢）。
+ * 按上游划分的 RestTemplate，各自独立的连接池、超时与并发上限（voice.http-*）：
+ * <ul>
+ *   <li>{@link #DASHSCOPE}：阿里云 DashScope（对话、TTS、Embedding）及 TTS 音频下载，TLS 上经 ALPN 协商 HTTP/2，单连接多路复用</li>
+ *   <li>{@link #LOCAL_MODEL}：本地 vLLM、Ollama，大模型生成较慢，读超时长</li>
+ *   <li>{@link #PUBLIC_DATA}：中央气象台、新浪行情等公共接口，超时短，慢了宁可降级</li>
+ *   <li>{@link #DEVICE}：局域网设备，连接超时短，设备离线时尽快失败</li>
+ *   <li>{@link #EMBEDDING_INGEST}：批量入库的 embedding 请求，按当前模式连 DashScope 或 Ollama，并发上限为 embedding-ingest-concurrency，
+ *       与语音链路的连接分开限流，大批量导入不占用对话、TTS 与检索的并发许可</li>
+ * </ul>
+ * 底层为 JDK HttpClient，空闲连接保持复用（keep-alive），不再每次请求新建连接。
+ * 含明文 HTTP 地址的上游（本地模型、局域网设备、中央气象台 http://www.nmc.cn）固定 HTTP/1.1，免去 h2c 升级尝试。
+ * 启动完成后异步向当前模式用到的模型服务发一次 HEAD 预热，TLS 握手不落在第一次语音请求上。
  */
+@Slf4j
 @Configuration
 public class RestTemplateConfig {
 
-    @Bean
-    public RestTemplate restTemplate() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(10_000);
-        factory.setReadTimeout(120_000);
-        return new RestTemplate(factory);
+    public static final String DASHSCOPE = "dashscopeRestTemplate";
+    public static final String LOCAL_MODEL = "localModelRestTemplate";
+    public static final String PUBLIC_DATA = "publicDataRestTemplate";
+    public static final String DEVICE = "deviceRestTemplate";
+    public static final String EMBEDDING_INGEST = "embeddingIngestRestTemplate";
+
+    private static final String DEFAULT_DASHSCOPE_BASE = "https://dashscope.aliyuncs.com";
+
+    @Bean(DASHSCOPE)
+    public RestTemplate dashscopeRestTemplate(VoiceProperties props) {
+        return pooled("dashscope", HttpClient.Version.HTTP_2, props.getHttpDashscopeConnectTimeoutMs(),
+                props.getHttpDashscopeReadTimeoutMs(), props.getHttpDashscopeMaxConnections());
+    }
+
+    @Bean(LOCAL_MODEL)
+    public RestTemplate localModelRestTemplate(VoiceProperties props) {
+        return pooled("local-model", HttpClient.Version.HTTP_1_1, props.getHttpLocalModelConnectTimeoutMs(),
+                props.getHttpLocalModelReadTimeoutMs(), props.getHttpLocalModelMaxConnections());
+    }
+
+    @Bean(PUBLIC_DATA)
+    public RestTemplate publicDataRestTemplate(VoiceProperties props) {
+        return pooled("public-data", HttpClient.Version.HTTP_1_1, props.getHttpPublicDataConnectTimeoutMs(),
+                props.getHttpPublicDataReadTimeoutMs(), props.getHttpPublicDataMaxConnections());
+    }
+
+    @Bean(DEVICE)
+    public RestTemplate deviceRestTemplate(VoiceProperties props) {
+        return pooled("device", HttpClient.Version.HTTP_1_1, props.getHttpDeviceConnectTimeoutMs(),
+                props.getHttpDeviceReadTimeoutMs(), props.getHttpDeviceMaxConnections());
+    }
+
+    @Bean(EMBEDDING_INGEST)
+    public RestTemplate embeddingIngestRestTemplate(VoiceProperties props) {
+        int maxConnections = props.getEmbeddingIngestConcurrency();
+        if (props.isLocal()) {
+            return pooled("embedding-ingest", HttpClient.Version.HTTP_1_1, props.getHttpLocalModelConnectTimeoutMs(),
+                    props.getHttpLocalModelReadTimeoutMs(), maxConnections);
+        }
+        return pooled("embedding-ingest", HttpClient.Version.HTTP_2, props.getHttpDashscopeConnectTimeoutMs(),
+                props.getHttpDashscopeReadTimeoutMs(), maxConnections);
+    }
+
+    private static RestTemplate pooled(String upstream, HttpClient.Version version, int connectTimeoutMs,
+                                       int readTimeoutMs, int maxConnections) {
+        HttpClient client = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(client);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        RestTemplate restTemplate = new RestTemplate(factory);
+        restTemplate.getInterceptors().add(new UpstreamLimitInterceptor(upstream, maxConnections, connectTimeoutMs));
+        return restTemplate;
+    }
+
+    /**
+     * 预热连接：线上模式连 DashScope，本地模式连 vLLM 与 Ollama。只为建立并缓存连接，响应状态码不关心。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm(ApplicationReadyEvent event) {
+        VoiceProperties props = event.getApplicationContext().getBean(VoiceProperties.class);
+        if (!props.isHttpPrewarmEnabled()) return;
+        RestTemplate restTemplate;
+        Set<String> targets = new LinkedHashSet<>();
+        if (props.isLocal()) {
+            restTemplate = event.getApplicationContext().getBean(LOCAL_MODEL, RestTemplate.class);
+            targets.add(origin(props.getVllmBaseUrl()));
+            targets.add(origin(props.getOllamaBaseUrl()));
+        } else {
+            restTemplate = event.getApplicationContext().getBean(DASHSCOPE, RestTemplate.class);
+            targets.add(origin(props.getQwenBaseUrl()));
+            targets.add(DEFAULT_DASHSCOPE_BASE);
+        }
+        targets.remove(null);
+        Thread t = new Thread(() -> {
+            for (String target : targets) {
+                long start = System.currentTimeMillis();
+                try {
+                    restTemplate.headForHeaders(target);
+                } catch (Exception e) {
+                    // 4xx/5xx 也已完成握手，连接同样进入连接池
+                    log.debug("[HTTP预热] {} 响应: {}", target, e.getMessage());
+                }
+                log.info("[HTTP预热] {} 完成, 耗时 {} ms", target, System.currentTimeMillis() - start);
+            }
+        }, "http-prewarm");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** 取 scheme://host[:port]，无效地址返回 null */
+    private static String origin(String baseUrl) {
+        if (baseUrl == null || baseUrl.isBlank()) return null;
+        try {
+            URI uri = URI.create(baseUrl.trim());
+            if (uri.getScheme() == null || uri.getHost() == null) return null;
+            return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 }
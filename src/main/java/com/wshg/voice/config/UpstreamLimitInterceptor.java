@@ -0,0 +1,90 @@
+package com.wshg.voice.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个上游的并发连接上限：每个请求占用一个许可，直到响应关闭（响应体读完）才归还。
+ * 许可用尽时最多等待 waitMillis，仍拿不到则以 IOException 失败（RestTemplate 转为 ResourceAccessException），
+ * 避免某个上游变慢时请求无限堆积、占满调用线程。
+ */
+class UpstreamLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    private final String upstream;
+    private final Semaphore permits;
+    private final long waitMillis;
+
+    UpstreamLimitInterceptor(String upstream, int maxConnections, long waitMillis) {
+        this.upstream = upstream;
+        this.permits = new Semaphore(Math.max(1, maxConnections));
+        this.waitMillis = waitMillis;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        try {
+            if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("[HTTP-" + upstream + "] 并发连接已满，等待 " + waitMillis + " ms 未获得连接: " + request.getURI());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("[HTTP-" + upstream + "] 等待连接被中断", e);
+        }
+        try {
+            return new ReleasingResponse(execution.execute(request, body));
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** 关闭时归还许可（只归还一次） */
+    private class ReleasingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingResponse(ClientHttpResponse delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (released.compareAndSet(false, true)) permits.release();
+            }
+        }
+    }
+}
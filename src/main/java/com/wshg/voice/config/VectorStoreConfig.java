@@ -2,12 +2,15 @@ package com.wshg.voice.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wshg.voice.repository.VectorDocumentRepository;
+import com.wshg.voice.store.HnswVectorStore;
 import com.wshg.voice.store.InMemoryVectorStore;
+import com.wshg.voice.store.IvfVectorStore;
 import com.wshg.voice.store.MysqlVectorStore;
 import com.wshg.voice.store.VectorStore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 @Configuration
 public class VectorStoreConfig {
@@ -20,7 +23,45 @@ public class VectorStoreConfig {
 
     @Bean
     @ConditionalOnProperty(name = "voice.vector-store-type", havingValue = "mysql", matchIfMissing = true)
-    public VectorStore mysqlVectorStore(VectorDocumentRepository vectorDocumentRepository, ObjectMapper objectMapper) {
-        return new MysqlVectorStore(vectorDocumentRepository, objectMapper);
+    public VectorStore mysqlVectorStore(VoiceProperties voiceProperties,
+                                        VectorDocumentRepository vectorDocumentRepository,
+                                        JdbcTemplate jdbcTemplate,
+                                        ObjectMapper objectMapper) {
+        return new MysqlVectorStore(vectorDocumentRepository, jdbcTemplate, objectMapper, voiceProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "voice.vector-store-type", havingValue = "hnsw")
+    public VectorStore hnswVectorStore(VoiceProperties voiceProperties,
+                                       VectorDocumentRepository vectorDocumentRepository,
+                                       JdbcTemplate jdbcTemplate,
+                                       ObjectMapper objectMapper) {
+        return new HnswVectorStore(backingStore(voiceProperties, vectorDocumentRepository, jdbcTemplate, objectMapper), voiceProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "voice.vector-store-type", havingValue = "ivf")
+    public VectorStore ivfVectorStore(VoiceProperties voiceProperties,
+                                      VectorDocumentRepository vectorDocumentRepository,
+                                      JdbcTemplate jdbcTemplate,
+                                      ObjectMapper objectMapper) {
+        return new IvfVectorStore(backingStore(voiceProperties, vectorDocumentRepository, jdbcTemplate, objectMapper), voiceProperties);
+    }
+
+    /**
+     * 近似检索索引的底层持久化库。不是 Spring Bean，需手动加载数据，关闭由外层库的 shutdown 负责。
+     */
+    private VectorStore backingStore(VoiceProperties voiceProperties,
+                                     VectorDocumentRepository vectorDocumentRepository,
+                                     JdbcTemplate jdbcTemplate,
+                                     ObjectMapper objectMapper) {
+        if ("file".equalsIgnoreCase(voiceProperties.getVectorIndexBackend())) {
+            InMemoryVectorStore store = new InMemoryVectorStore(voiceProperties, objectMapper);
+            store.loadFromFile();
+            return store;
+        }
+        MysqlVectorStore store = new MysqlVectorStore(vectorDocumentRepository, jdbcTemplate, objectMapper, voiceProperties);
+        store.loadFromDb();
+        return store;
     }
 }
@@ -5,6 +5,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.core.env.Environment;
 
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * 语音管道配置：仅支持两种模式。
@@ -47,9 +48,64 @@ public class VoiceProperties {
     private boolean stockEnabled = true;
     /** RAG 检索最低相似度（余弦），低于此值的文档不进入上下文，避免无关命中。建议 0.45~0.6 */
     private double ragMinScore = 0.5;
+    /** 混合检索中被 BM25 字面命中的文档可放宽到的最低余弦相似度（仍须满足，不能只凭字面命中进入上下文） */
+    private double ragHybridMinScore = 0.35;
+    /** 向量库类型：mysql | file | hnsw | ivf */
     private String vectorStoreType = "mysql";
     /** 向量库文件路径（仅 vector-store-type=file 时生效） */
     private String vectorStorePath = "data/vector-store.json";
+    /** 向量库文件格式：json | binary（binary 为定长向量区 + 文本区，启动时内存映射读取；加载时按文件头自动识别） */
+    private String vectorStoreFormat = "json";
+    /** file 存储是否启用预写日志：写入只追加日志并成组 fsync，后台压缩为快照（否则每次写入重写整个文件） */
+    private boolean vectorWalEnabled = false;
+    /** 日志段超过该字节数时后台写快照并切换新段 */
+    private long vectorWalCompactBytes = 64L * 1024 * 1024;
+    /** 向量是否存放在堆外连续内存（写入时单位化），文档量大时降低堆占用与 GC 压力 */
+    private boolean vectorOffHeap = false;
+    /** 向量量化：none | int8 | binary（先用 int8 整数点积或 1-bit 草图汉明距离粗排，再对候选全精度精排） */
+    private String vectorQuantization = "none";
+    /** 量化粗排后进入全精度精排的候选数 */
+    private int vectorRerankCandidates = 100;
+    /** binary 草图粗排后进入全精度精排的候选数（1-bit 较粗，候选需多于 int8） */
+    private int vectorSketchCandidates = 400;
+    /** 精确检索并行扫描的线程数，≤0 时取 CPU 核数，1 为关闭并行 */
+    private int vectorSearchParallelism = 0;
+    /** 存活文档数达到该值才分区并行扫描，文档少时单线程更快 */
+    private int vectorParallelThreshold = 50000;
+    /** 建立倒排索引的元数据键，带 filter 的检索对这些键先求候选再打分，其余键逐条校验 */
+    private List<String> vectorFilterKeys = List.of("source", "room", "category");
+    /** 检索模式：vector 纯向量 | hybrid 向量 + BM25 字面检索（中文二元/三元字组）按倒数排名融合 */
+    private String vectorSearchMode = "vector";
+    /** hybrid 模式下向量与字面两路各取的候选数，融合后再截取 topK */
+    private int vectorHybridCandidates = 50;
+    /** 倒数排名融合常数 k：得分为各路 1/(k + 名次) 之和，k 越大名次差异的影响越小 */
+    private int vectorHybridRrfK = 60;
+    /** file/mysql 向量库的内存索引布局：flat 槽位式（读写锁） | segmented 分段写时复制（检索无锁，后台合并） */
+    private String vectorIndexLayout = "flat";
+    /** segmented 布局下可变段达到该条数即封存为只读段 */
+    private int vectorSegmentSize = 4096;
+    /** segmented 布局下封存段数超过该值时，后台把存活文档最少的这么多段合并为一段 */
+    private int vectorSegmentMergeFactor = 8;
+    /** vector-store-type=hnsw/ivf 时的底层持久化：mysql | file */
+    private String vectorIndexBackend = "mysql";
+    /** MySQL 向量库批量写入时每个 JDBC batch 的行数（需连接串开启 rewriteBatchedStatements 才会合并为多行 INSERT） */
+    private int vectorJdbcBatchSize = 500;
+    /** MySQL 向量库启动加载时每页行数（按主键 keyset 分页） */
+    private int vectorLoadPageSize = 2000;
+    /** 启动加载时的解码并行度，≤0 时取 CPU 核数 */
+    private int vectorLoadParallelism = 0;
+    /** HNSW 每个节点的邻居数（第 0 层为 2M），越大召回越高、内存与建图耗时越大 */
+    private int hnswM = 16;
+    /** HNSW 建图时的候选队列长度 */
+    private int hnswEfConstruction = 200;
+    /** HNSW 检索时的候选队列长度（不小于 topK），越大召回越高、检索越慢 */
+    private int hnswEfSearch = 64;
+    /** IVF 倒排列表（质心）数，≤0 时按 sqrt(文档数) 自动取值 */
+    private int ivfLists = 0;
+    /** IVF 检索时扫描的列表数，越大召回越高、检索越慢 */
+    private int ivfNprobe = 8;
+    /** IVF 最长列表超过平均长度的该倍数时后台重新训练质心 */
+    private double ivfRebalanceRatio = 4.0;
 
     // ---------- 本地（local）：ASR + TTS 均用 PaddleSpeech ----------
     /** PaddleSpeech 命令行（pip/conda 安装后为 paddlespeech） */
@@ -65,6 +121,60 @@ public class VoiceProperties {
     private String qwenApiKey;
     private String embeddingModel = "text-embedding-v3";
     private int embeddingDimensions = 1024;
+    /** 批量 embedding 每次请求的最大文本数（DashScope text-embedding-v3 单次最多 10 条） */
+    private int embeddingBatchSize = 10;
+    /** 是否缓存查询/文档文本的 embedding（按 服务商 + 模型 + 维度 + 规范化文本 缓存，LRU 淘汰） */
+    private boolean embeddingCacheEnabled = true;
+    /** embedding 缓存占用上限（字节，按向量与键的估算大小计） */
+    private long embeddingCacheMaxBytes = 64L * 1024 * 1024;
+    /** embedding 缓存落盘文件，为空则只在内存中；非空时启动加载、定期及关闭时写出 */
+    private String embeddingCachePath = "";
+    /** 单条 embedding 请求合并：首条到达后最多等待的毫秒数，期间到达的请求合并为一次批量请求；0 为不合并 */
+    private long embeddingCoalesceWaitMs = 5;
+    /** 合并后每批最多文本数，≤0 时取 embedding-batch-size */
+    private int embeddingCoalesceMaxBatch = 0;
+    /** 同时在途的合并批量请求数 */
+    private int embeddingCoalesceConcurrency = 4;
+    /** 批量入库时同时在途的分块 embedding 请求数（每块 embedding-batch-size 条），也是入库专用连接的并发上限 */
+    private int embeddingIngestConcurrency = 4;
+    /** 批量入库时分块中失败文本的逐条重试次数 */
+    private int embeddingIngestRetries = 2;
+    /** 异步导入任务的执行线程数（任务之间串行或有限并行，避免挤占在线请求） */
+    private int vectorIngestJobThreads = 1;
+    /** 异步导入任务最多排队数，满时拒绝新任务 */
+    private int vectorIngestJobQueue = 8;
+    /** 异步导入任务每次交给批量入库的文档数 */
+    private int vectorIngestJobBatchSize = 500;
+    /** 长文本切段时每段最多字符数 */
+    private int vectorChunkSize = 400;
+    /** 相邻段落重叠的最多字符数（按整句保留，不超过段长一半） */
+    private int vectorChunkOverlap = 80;
+    /** DashScope（对话、TTS、Embedding）连接超时（毫秒） */
+    private int httpDashscopeConnectTimeoutMs = 5000;
+    /** DashScope 读超时（毫秒），需容纳大模型生成与 TTS 合成 */
+    private int httpDashscopeReadTimeoutMs = 120_000;
+    /** DashScope 最大并发连接数（HTTP/2 下为最大并发请求数） */
+    private int httpDashscopeMaxConnections = 32;
+    /** 本地 vLLM / Ollama 连接超时（毫秒） */
+    private int httpLocalModelConnectTimeoutMs = 3000;
+    /** 本地 vLLM / Ollama 读超时（毫秒） */
+    private int httpLocalModelReadTimeoutMs = 120_000;
+    /** 本地 vLLM / Ollama 最大并发连接数 */
+    private int httpLocalModelMaxConnections = 16;
+    /** 天气、行情等公共接口连接超时（毫秒） */
+    private int httpPublicDataConnectTimeoutMs = 3000;
+    /** 天气、行情等公共接口读超时（毫秒） */
+    private int httpPublicDataReadTimeoutMs = 10_000;
+    /** 天气、行情等公共接口最大并发连接数 */
+    private int httpPublicDataMaxConnections = 8;
+    /** 局域网设备连接超时（毫秒），设备离线时尽快失败 */
+    private int httpDeviceConnectTimeoutMs = 2000;
+    /** 局域网设备读超时（毫秒） */
+    private int httpDeviceReadTimeoutMs = 5000;
+    /** 局域网设备最大并发连接数 */
+    private int httpDeviceMaxConnections = 16;
+    /** 启动完成后预热模型服务连接（线上 DashScope，本地 vLLM/Ollama） */
+    private boolean httpPrewarmEnabled = true;
 
     public String getTempDir() { return tempDir; }
     public void setTempDir(String tempDir) { this.tempDir = tempDir; }
@@ -86,10 +196,64 @@ public class VoiceProperties {
     public void setStockEnabled(boolean stockEnabled) { this.stockEnabled = stockEnabled; }
     public double getRagMinScore() { return ragMinScore; }
     public void setRagMinScore(double ragMinScore) { this.ragMinScore = ragMinScore; }
+    public double getRagHybridMinScore() { return ragHybridMinScore; }
+    public void setRagHybridMinScore(double ragHybridMinScore) { this.ragHybridMinScore = ragHybridMinScore; }
     public String getVectorStoreType() { return vectorStoreType; }
     public void setVectorStoreType(String vectorStoreType) { this.vectorStoreType = vectorStoreType; }
     public String getVectorStorePath() { return vectorStorePath; }
     public void setVectorStorePath(String vectorStorePath) { this.vectorStorePath = vectorStorePath; }
+    public String getVectorStoreFormat() { return vectorStoreFormat; }
+    public void setVectorStoreFormat(String vectorStoreFormat) { this.vectorStoreFormat = vectorStoreFormat; }
+    public boolean isVectorWalEnabled() { return vectorWalEnabled; }
+    public void setVectorWalEnabled(boolean vectorWalEnabled) { this.vectorWalEnabled = vectorWalEnabled; }
+    public long getVectorWalCompactBytes() { return vectorWalCompactBytes; }
+    public void setVectorWalCompactBytes(long vectorWalCompactBytes) { this.vectorWalCompactBytes = vectorWalCompactBytes; }
+    public boolean isVectorOffHeap() { return vectorOffHeap; }
+    public void setVectorOffHeap(boolean vectorOffHeap) { this.vectorOffHeap = vectorOffHeap; }
+    public String getVectorQuantization() { return vectorQuantization; }
+    public void setVectorQuantization(String vectorQuantization) { this.vectorQuantization = vectorQuantization; }
+    public int getVectorRerankCandidates() { return vectorRerankCandidates; }
+    public void setVectorRerankCandidates(int vectorRerankCandidates) { this.vectorRerankCandidates = vectorRerankCandidates; }
+    public int getVectorSketchCandidates() { return vectorSketchCandidates; }
+    public void setVectorSketchCandidates(int vectorSketchCandidates) { this.vectorSketchCandidates = vectorSketchCandidates; }
+    public int getVectorSearchParallelism() { return vectorSearchParallelism; }
+    public void setVectorSearchParallelism(int vectorSearchParallelism) { this.vectorSearchParallelism = vectorSearchParallelism; }
+    public int getVectorParallelThreshold() { return vectorParallelThreshold; }
+    public void setVectorParallelThreshold(int vectorParallelThreshold) { this.vectorParallelThreshold = vectorParallelThreshold; }
+    public List<String> getVectorFilterKeys() { return vectorFilterKeys; }
+    public void setVectorFilterKeys(List<String> vectorFilterKeys) { this.vectorFilterKeys = vectorFilterKeys; }
+    public String getVectorIndexLayout() { return vectorIndexLayout; }
+    public void setVectorIndexLayout(String vectorIndexLayout) { this.vectorIndexLayout = vectorIndexLayout; }
+    public int getVectorSegmentSize() { return vectorSegmentSize; }
+    public void setVectorSegmentSize(int vectorSegmentSize) { this.vectorSegmentSize = vectorSegmentSize; }
+    public int getVectorSegmentMergeFactor() { return vectorSegmentMergeFactor; }
+    public void setVectorSegmentMergeFactor(int vectorSegmentMergeFactor) { this.vectorSegmentMergeFactor = vectorSegmentMergeFactor; }
+    public String getVectorSearchMode() { return vectorSearchMode; }
+    public void setVectorSearchMode(String vectorSearchMode) { this.vectorSearchMode = vectorSearchMode; }
+    public int getVectorHybridCandidates() { return vectorHybridCandidates; }
+    public void setVectorHybridCandidates(int vectorHybridCandidates) { this.vectorHybridCandidates = vectorHybridCandidates; }
+    public int getVectorHybridRrfK() { return vectorHybridRrfK; }
+    public void setVectorHybridRrfK(int vectorHybridRrfK) { this.vectorHybridRrfK = vectorHybridRrfK; }
+    public String getVectorIndexBackend() { return vectorIndexBackend; }
+    public void setVectorIndexBackend(String vectorIndexBackend) { this.vectorIndexBackend = vectorIndexBackend; }
+    public int getVectorJdbcBatchSize() { return vectorJdbcBatchSize; }
+    public void setVectorJdbcBatchSize(int vectorJdbcBatchSize) { this.vectorJdbcBatchSize = vectorJdbcBatchSize; }
+    public int getVectorLoadPageSize() { return vectorLoadPageSize; }
+    public void setVectorLoadPageSize(int vectorLoadPageSize) { this.vectorLoadPageSize = vectorLoadPageSize; }
+    public int getVectorLoadParallelism() { return vectorLoadParallelism; }
+    public void setVectorLoadParallelism(int vectorLoadParallelism) { this.vectorLoadParallelism = vectorLoadParallelism; }
+    public int getHnswM() { return hnswM; }
+    public void setHnswM(int hnswM) { this.hnswM = hnswM; }
+    public int getHnswEfConstruction() { return hnswEfConstruction; }
+    public void setHnswEfConstruction(int hnswEfConstruction) { this.hnswEfConstruction = hnswEfConstruction; }
+    public int getHnswEfSearch() { return hnswEfSearch; }
+    public void setHnswEfSearch(int hnswEfSearch) { this.hnswEfSearch = hnswEfSearch; }
+    public int getIvfLists() { return ivfLists; }
+    public void setIvfLists(int ivfLists) { this.ivfLists = ivfLists; }
+    public int getIvfNprobe() { return ivfNprobe; }
+    public void setIvfNprobe(int ivfNprobe) { this.ivfNprobe = ivfNprobe; }
+    public double getIvfRebalanceRatio() { return ivfRebalanceRatio; }
+    public void setIvfRebalanceRatio(double ivfRebalanceRatio) { this.ivfRebalanceRatio = ivfRebalanceRatio; }
 
     public String getPaddlespeechCmd() { return paddlespeechCmd; }
     public void setPaddlespeechCmd(String paddlespeechCmd) { this.paddlespeechCmd = paddlespeechCmd; }
@@ -112,6 +276,60 @@ public class VoiceProperties {
     public void setEmbeddingModel(String embeddingModel) { this.embeddingModel = embeddingModel; }
     public int getEmbeddingDimensions() { return embeddingDimensions; }
     public void setEmbeddingDimensions(int embeddingDimensions) { this.embeddingDimensions = embeddingDimensions; }
+    public int getEmbeddingBatchSize() { return embeddingBatchSize; }
+    public void setEmbeddingBatchSize(int embeddingBatchSize) { this.embeddingBatchSize = embeddingBatchSize; }
+    public boolean isEmbeddingCacheEnabled() { return embeddingCacheEnabled; }
+    public void setEmbeddingCacheEnabled(boolean embeddingCacheEnabled) { this.embeddingCacheEnabled = embeddingCacheEnabled; }
+    public long getEmbeddingCacheMaxBytes() { return embeddingCacheMaxBytes; }
+    public void setEmbeddingCacheMaxBytes(long embeddingCacheMaxBytes) { this.embeddingCacheMaxBytes = embeddingCacheMaxBytes; }
+    public String getEmbeddingCachePath() { return embeddingCachePath; }
+    public void setEmbeddingCachePath(String embeddingCachePath) { this.embeddingCachePath = embeddingCachePath; }
+    public long getEmbeddingCoalesceWaitMs() { return embeddingCoalesceWaitMs; }
+    public void setEmbeddingCoalesceWaitMs(long embeddingCoalesceWaitMs) { this.embeddingCoalesceWaitMs = embeddingCoalesceWaitMs; }
+    public int getEmbeddingCoalesceMaxBatch() { return embeddingCoalesceMaxBatch; }
+    public void setEmbeddingCoalesceMaxBatch(int embeddingCoalesceMaxBatch) { this.embeddingCoalesceMaxBatch = embeddingCoalesceMaxBatch; }
+    public int getEmbeddingCoalesceConcurrency() { return embeddingCoalesceConcurrency; }
+    public void setEmbeddingCoalesceConcurrency(int embeddingCoalesceConcurrency) { this.embeddingCoalesceConcurrency = embeddingCoalesceConcurrency; }
+    public int getEmbeddingIngestConcurrency() { return embeddingIngestConcurrency; }
+    public void setEmbeddingIngestConcurrency(int embeddingIngestConcurrency) { this.embeddingIngestConcurrency = embeddingIngestConcurrency; }
+    public int getEmbeddingIngestRetries() { return embeddingIngestRetries; }
+    public void setEmbeddingIngestRetries(int embeddingIngestRetries) { this.embeddingIngestRetries = embeddingIngestRetries; }
+    public int getVectorIngestJobThreads() { return vectorIngestJobThreads; }
+    public void setVectorIngestJobThreads(int vectorIngestJobThreads) { this.vectorIngestJobThreads = vectorIngestJobThreads; }
+    public int getVectorIngestJobQueue() { return vectorIngestJobQueue; }
+    public void setVectorIngestJobQueue(int vectorIngestJobQueue) { this.vectorIngestJobQueue = vectorIngestJobQueue; }
+    public int getVectorIngestJobBatchSize() { return vectorIngestJobBatchSize; }
+    public void setVectorIngestJobBatchSize(int vectorIngestJobBatchSize) { this.vectorIngestJobBatchSize = vectorIngestJobBatchSize; }
+    public int getVectorChunkSize() { return vectorChunkSize; }
+    public void setVectorChunkSize(int vectorChunkSize) { this.vectorChunkSize = vectorChunkSize; }
+    public int getVectorChunkOverlap() { return vectorChunkOverlap; }
+    public void setVectorChunkOverlap(int vectorChunkOverlap) { this.vectorChunkOverlap = vectorChunkOverlap; }
+    public int getHttpDashscopeConnectTimeoutMs() { return httpDashscopeConnectTimeoutMs; }
+    public void setHttpDashscopeConnectTimeoutMs(int httpDashscopeConnectTimeoutMs) { this.httpDashscopeConnectTimeoutMs = httpDashscopeConnectTimeoutMs; }
+    public int getHttpDashscopeReadTimeoutMs() { return httpDashscopeReadTimeoutMs; }
+    public void setHttpDashscopeReadTimeoutMs(int httpDashscopeReadTimeoutMs) { this.httpDashscopeReadTimeoutMs = httpDashscopeReadTimeoutMs; }
+    public int getHttpDashscopeMaxConnections() { return httpDashscopeMaxConnections; }
+    public void setHttpDashscopeMaxConnections(int httpDashscopeMaxConnections) { this.httpDashscopeMaxConnections = httpDashscopeMaxConnections; }
+    public int getHttpLocalModelConnectTimeoutMs() { return httpLocalModelConnectTimeoutMs; }
+    public void setHttpLocalModelConnectTimeoutMs(int httpLocalModelConnectTimeoutMs) { this.httpLocalModelConnectTimeoutMs = httpLocalModelConnectTimeoutMs; }
+    public int getHttpLocalModelReadTimeoutMs() { return httpLocalModelReadTimeoutMs; }
+    public void setHttpLocalModelReadTimeoutMs(int httpLocalModelReadTimeoutMs) { this.httpLocalModelReadTimeoutMs = httpLocalModelReadTimeoutMs; }
+    public int getHttpLocalModelMaxConnections() { return httpLocalModelMaxConnections; }
+    public void setHttpLocalModelMaxConnections(int httpLocalModelMaxConnections) { this.httpLocalModelMaxConnections = httpLocalModelMaxConnections; }
+    public int getHttpPublicDataConnectTimeoutMs() { return httpPublicDataConnectTimeoutMs; }
+    public void setHttpPublicDataConnectTimeoutMs(int httpPublicDataConnectTimeoutMs) { this.httpPublicDataConnectTimeoutMs = httpPublicDataConnectTimeoutMs; }
+    public int getHttpPublicDataReadTimeoutMs() { return httpPublicDataReadTimeoutMs; }
+    public void setHttpPublicDataReadTimeoutMs(int httpPublicDataReadTimeoutMs) { this.httpPublicDataReadTimeoutMs = httpPublicDataReadTimeoutMs; }
+    public int getHttpPublicDataMaxConnections() { return httpPublicDataMaxConnections; }
+    public void setHttpPublicDataMaxConnections(int httpPublicDataMaxConnections) { this.httpPublicDataMaxConnections = httpPublicDataMaxConnections; }
+    public int getHttpDeviceConnectTimeoutMs() { return httpDeviceConnectTimeoutMs; }
+    public void setHttpDeviceConnectTimeoutMs(int httpDeviceConnectTimeoutMs) { this.httpDeviceConnectTimeoutMs = httpDeviceConnectTimeoutMs; }
+    public int getHttpDeviceReadTimeoutMs() { return httpDeviceReadTimeoutMs; }
+    public void setHttpDeviceReadTimeoutMs(int httpDeviceReadTimeoutMs) { this.httpDeviceReadTimeoutMs = httpDeviceReadTimeoutMs; }
+    public int getHttpDeviceMaxConnections() { return httpDeviceMaxConnections; }
+    public void setHttpDeviceMaxConnections(int httpDeviceMaxConnections) { this.httpDeviceMaxConnections = httpDeviceMaxConnections; }
+    public boolean isHttpPrewarmEnabled() { return httpPrewarmEnabled; }
+    public void setHttpPrewarmEnabled(boolean httpPrewarmEnabled) { this.httpPrewarmEnabled = httpPrewarmEnabled; }
 
     public Path getTempDirPath() { return Path.of(tempDir).toAbsolutePath(); }
     public Path getTtsDirPath() { return Path.of(ttsDir).toAbsolutePath(); }
@@ -1,13 +1,21 @@
 package com.wshg.voice.controller;
 
+import com.wshg.voice.service.EmbeddingCache;
+import com.wshg.voice.service.IngestJob;
+import com.wshg.voice.service.VectorIngestService;
 import com.wshg.voice.service.VectorStoreService;
+import com.wshg.voice.store.Filter;
 import com.wshg.voice.store.SearchResult;
 import com.wshg.voice.store.VectorDocument;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -21,7 +29,12 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class VectorController {
 
+    /** 批量检索单次请求的查询条数上限 */
+    private static final int MAX_BATCH_QUERIES = 256;
+
     private final VectorStoreService vectorStoreService;
+    private final EmbeddingCache embeddingCache;
+    private final VectorIngestService vectorIngestService;
 
     /**
      * 添加单条文档。
@@ -48,7 +61,7 @@ public class VectorController {
     }
 
     /**
-     * 批量添加文档。
+     * 批量添加文档（同步，全部入库后返回；大批量导入请用 POST /api/vector/ingest）。
      * POST /api/vector/documents/batch
      * Body: { "texts": ["文档1", "文档2", ...] }
      */
@@ -65,16 +78,96 @@ public class VectorController {
         return ResponseEntity.ok(Map.of("ids", ids, "count", ids.size()));
     }
 
+    /**
+     * 异步导入语料：请求体为原始内容（不是 JSON 包装），保存后立即返回任务 id，入库在后台进行。
+     * POST /api/vector/ingest?format=ndjson|text&source=manual
+     * ndjson 每行 {"text": "...", "metadata": {...}}；text 每个非空行一条文档。未指定 format 时按 Content-Type 判断（含 json 为 ndjson）。
+     * 返回 202 与任务进度，排队已满时返回 503。
+     */
+    @PostMapping("/ingest")
+    public ResponseEntity<Map<String, Object>> ingest(
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "source", required = false) String source,
+            HttpServletRequest request) throws IOException {
+        if (format == null || format.isBlank()) {
+            String contentType = request.getContentType();
+            format = contentType != null && contentType.toLowerCase().contains("json")
+                    ? VectorIngestService.FORMAT_NDJSON : VectorIngestService.FORMAT_TEXT;
+        }
+        format = format.toLowerCase();
+        if (!VectorIngestService.FORMAT_NDJSON.equals(format) && !VectorIngestService.FORMAT_TEXT.equals(format)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "format 仅支持 ndjson 或 text"));
+        }
+        log.info("[API] POST /api/vector/ingest format={}, source={}, contentLength={}", format, source, request.getContentLengthLong());
+        IngestJob job = vectorIngestService.submit(request.getInputStream(), format,
+                source != null && !source.isBlank() ? source : null, null);
+        if (job == null) {
+            return ResponseEntity.status(503).body(Map.of("error", "导入任务排队已满，请稍后重试"));
+        }
+        return ResponseEntity.accepted().body(job.toMap());
+    }
+
+    /**
+     * 上传长文本（产品手册、FAQ 等）异步切段入库：请求体为 UTF-8 纯文本，流式写入临时文件后返回任务 id；
+     * 后台按中文句末标点切成相邻重叠的段落，每段 metadata 带 source（默认 document）、file、offset、passage。
+     * POST /api/vector/ingest/document?name=说明书.txt&source=manual
+     * 返回 202 与任务进度，排队已满时返回 503；进度查询同 GET /api/vector/ingest/{jobId}。
+     */
+    @PostMapping("/ingest/document")
+    public ResponseEntity<Map<String, Object>> ingestDocument(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "source", required = false) String source,
+            HttpServletRequest request) throws IOException {
+        log.info("[API] POST /api/vector/ingest/document name={}, source={}, contentLength={}", name, source, request.getContentLengthLong());
+        IngestJob job = vectorIngestService.submit(request.getInputStream(), VectorIngestService.FORMAT_DOCUMENT,
+                source != null && !source.isBlank() ? source : null, name != null && !name.isBlank() ? name : null);
+        if (job == null) {
+            return ResponseEntity.status(503).body(Map.of("error", "导入任务排队已满，请稍后重试"));
+        }
+        return ResponseEntity.accepted().body(job.toMap());
+    }
+
+    /**
+     * 查询导入任务进度：已读取、已入库、失败数与吞吐（docsPerSecond）。
+     * GET /api/vector/ingest/{jobId}
+     */
+    @GetMapping("/ingest/{jobId}")
+    public ResponseEntity<Map<String, Object>> ingestStatus(@PathVariable("jobId") String jobId) {
+        IngestJob job = vectorIngestService.get(jobId);
+        if (job == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "任务不存在: " + jobId));
+        }
+        return ResponseEntity.ok(job.toMap());
+    }
+
+    /**
+     * 列出保留的导入任务（进行中与最近结束的）。
+     * GET /api/vector/ingest
+     */
+    @GetMapping("/ingest")
+    public ResponseEntity<Map<String, Object>> ingestJobs() {
+        List<Map<String, Object>> jobs = vectorIngestService.list().stream().map(IngestJob::toMap).collect(Collectors.toList());
+        return ResponseEntity.ok(Map.of("jobs", jobs, "count", jobs.size()));
+    }
+
     /**
      * 语义检索。
-     * GET /api/vector/search?query=xxx&topK=5
-     * 或 POST /api/vector/search Body: { "query": "xxx", "topK": 5 }
+     * GET /api/vector/search?query=xxx&topK=5&source=device&room=客厅&category=智能家居
+     * 或 POST /api/vector/search Body: { "query": "xxx", "topK": 5, "filter": { "source": "device", "room": ["客厅", "卧室"] } }
+     * filter 中不同键为“且”，同一键的多个取值为“或”。
      */
     @GetMapping("/search")
     public ResponseEntity<Map<String, Object>> searchGet(
             @RequestParam("query") String query,
-            @RequestParam(value = "topK", defaultValue = "5") int topK) {
-        return doSearch(query, topK);
+            @RequestParam(value = "topK", defaultValue = "5") int topK,
+            @RequestParam(value = "source", required = false) String source,
+            @RequestParam(value = "room", required = false) String room,
+            @RequestParam(value = "category", required = false) String category) {
+        Map<String, Object> filter = new HashMap<>();
+        if (source != null && !source.isBlank()) filter.put("source", source);
+        if (room != null && !room.isBlank()) filter.put("room", room);
+        if (category != null && !category.isBlank()) filter.put("category", category);
+        return doSearch(query, topK, Filter.of(filter));
     }
 
     @PostMapping("/search")
@@ -82,18 +175,71 @@ public class VectorController {
         String query = (String) body.get("query");
         Object topKObj = body.get("topK");
         int topK = topKObj instanceof Number ? ((Number) topKObj).intValue() : 5;
-        return doSearch(query, topK);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> filter = body.get("filter") instanceof Map ? (Map<String, Object>) body.get("filter") : null;
+        return doSearch(query, topK, Filter.of(filter));
     }
 
-    private ResponseEntity<Map<String, Object>> doSearch(String query, int topK) {
+    private ResponseEntity<Map<String, Object>> doSearch(String query, int topK, Filter filter) {
         if (query == null || query.isBlank()) {
             return ResponseEntity.badRequest().body(Map.of("error", "query 不能为空"));
         }
         topK = Math.min(Math.max(topK, 1), 50);
-        log.info("[API] /vector/search query={}, topK={}", query.length() > 30 ? query.substring(0, 30) + "..." : query, topK);
-        List<SearchResult> results = vectorStoreService.search(query, topK);
+        log.info("[API] /vector/search query={}, topK={}, filter={}", query.length() > 30 ? query.substring(0, 30) + "..." : query, topK, filter);
+        List<SearchResult> results = vectorStoreService.search(query, topK, filter);
         log.info("[API] /vector/search 命中数={}", results.size());
-        List<Map<String, Object>> items = results.stream()
+        List<Map<String, Object>> items = toItems(results);
+        return ResponseEntity.ok(Map.of(
+                "query", query,
+                "results", items,
+                "count", items.size()
+        ));
+    }
+
+    /**
+     * 批量语义检索：所有查询一次 embedding、一遍扫描，共用 topK 与 filter。
+     * POST /api/vector/search/batch
+     * Body: { "queries": ["xxx", "yyy"], "topK": 5, "filter": { "source": "device" } }
+     * 返回 results 与 queries 顺序一致，空查询（含 null）对应空结果；queries 含非字符串元素时返回 400。
+     */
+    @PostMapping("/search/batch")
+    public ResponseEntity<Map<String, Object>> searchBatch(@RequestBody Map<String, Object> body) {
+        if (!(body.get("queries") instanceof List<?> raw) || raw.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "queries 不能为空"));
+        }
+        if (raw.size() > MAX_BATCH_QUERIES) {
+            return ResponseEntity.badRequest().body(Map.of("error", "queries 最多 " + MAX_BATCH_QUERIES + " 条"));
+        }
+        List<String> queries = new ArrayList<>(raw.size());
+        for (Object q : raw) {
+            if (q != null && !(q instanceof String)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "queries 只能包含字符串"));
+            }
+            queries.add((String) q);
+        }
+        Object topKObj = body.get("topK");
+        int topK = Math.min(Math.max(topKObj instanceof Number ? ((Number) topKObj).intValue() : 5, 1), 50);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> filterMap = body.get("filter") instanceof Map ? (Map<String, Object>) body.get("filter") : null;
+        Filter filter = Filter.of(filterMap);
+        log.info("[API] /vector/search/batch queries={}, topK={}, filter={}", queries.size(), topK, filter);
+        long start = System.currentTimeMillis();
+        List<List<SearchResult>> results = vectorStoreService.searchBatch(queries, topK, filter);
+        List<Map<String, Object>> items = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            List<Map<String, Object>> hits = i < results.size() ? toItems(results.get(i)) : List.of();
+            Map<String, Object> item = new HashMap<>();
+            item.put("query", queries.get(i));
+            item.put("results", hits);
+            item.put("count", hits.size());
+            items.add(item);
+        }
+        log.info("[API] /vector/search/batch 完成 queries={}, 耗时 {} ms", queries.size(), System.currentTimeMillis() - start);
+        return ResponseEntity.ok(Map.of("results", items, "count", items.size()));
+    }
+
+    private static List<Map<String, Object>> toItems(List<SearchResult> results) {
+        return results.stream()
                 .map(r -> {
                     VectorDocument doc = r.getDocument();
                     return Map.<String, Object>of(
@@ -104,20 +250,18 @@ public class VectorController {
                     );
                 })
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(Map.of(
-                "query", query,
-                "results", items,
-                "count", items.size()
-        ));
     }
 
     /**
-     * 获取向量库统计。
+     * 获取向量库统计（含 embedding 缓存命中率等）。
      * GET /api/vector/stats
      */
     @GetMapping("/stats")
     public ResponseEntity<Map<String, Object>> stats() {
-        return ResponseEntity.ok(Map.of("count", vectorStoreService.count()));
+        return ResponseEntity.ok(Map.of(
+                "count", vectorStoreService.count(),
+                "embeddingCache", embeddingCache.stats()
+        ));
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.wshg.voice.controller;
 
+import com.wshg.voice.config.RestTemplateConfig;
 import com.wshg.voice.config.VoiceProperties;
 import com.wshg.voice.dto.ChatRequest;
 import com.wshg.voice.dto.ChatResponse;
@@ -13,6 +14,7 @@ import com.wshg.voice.service.SinaStockService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -41,6 +43,7 @@ public class VoiceUploadController {
 
     private final VoicePipelineService pipelineService;
     private final VoiceProperties voiceProperties;
+    @Qualifier(RestTemplateConfig.DASHSCOPE)
     private final RestTemplate restTemplate;
     private final VectorStoreService vectorStoreService;
     private final ChatHistoryService chatHistoryService;
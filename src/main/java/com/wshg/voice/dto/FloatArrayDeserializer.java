@@ -0,0 +1,36 @@
+package com.wshg.voice.dto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 把 JSON 数字数组流式读入 float[]：逐个数字 token 直接写入预分配的原始数组，不经过 List&lt;Float&gt;/List&lt;Double&gt; 装箱。
+ * 初始容量按常见维度 1024 分配，恰好填满时不再复制；更长时按倍数扩容，更短时末尾截取一次。
+ */
+public class FloatArrayDeserializer extends JsonDeserializer<float[]> {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @Override
+    public float[] deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            return (float[]) ctxt.handleUnexpectedToken(float[].class, p);
+        }
+        float[] buf = new float[INITIAL_CAPACITY];
+        int n = 0;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t != JsonToken.VALUE_NUMBER_FLOAT && t != JsonToken.VALUE_NUMBER_INT) {
+                return (float[]) ctxt.handleUnexpectedToken(float.class, p);
+            }
+            if (n == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[n++] = p.getFloatValue();
+        }
+        return n == buf.length ? buf : Arrays.copyOf(buf, n);
+    }
+}
@@ -1,6 +1,7 @@
 package com.wshg.voice.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Data;
 
 import java.util.List;
@@ -8,33 +9,23 @@ import java.util.stream.Collectors;
 
 /**
  * Ollama /api/embed 响应体。
- * 返回格式：{ "embeddings": [[0.1, -0.2, ...], [...]] }
+ * 返回格式：{ "embeddings": [[0.1, -0.2, ...], [...]] }，每个向量经 {@link FloatArrayDeserializer} 直接读为 float[]。
  */
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class OllamaEmbedResponse {
-    private List<List<Double>> embeddings;
+    @JsonDeserialize(contentUsing = FloatArrayDeserializer.class)
+    private List<float[]> embeddings;
 
     public float[] getFirstEmbedding() {
         if (embeddings == null || embeddings.isEmpty()) return null;
-        List<Double> list = embeddings.get(0);
-        if (list == null) return null;
-        float[] arr = new float[list.size()];
-        for (int i = 0; i < list.size(); i++) {
-            arr[i] = list.get(i).floatValue();
-        }
-        return arr;
+        return embeddings.get(0);
     }
 
     public List<float[]> getAllEmbeddings() {
         if (embeddings == null || embeddings.isEmpty()) return List.of();
         return embeddings.stream()
-                .map(list -> {
-                    if (list == null) return new float[0];
-                    float[] arr = new float[list.size()];
-                    for (int i = 0; i < list.size(); i++) arr[i] = list.get(i).floatValue();
-                    return arr;
-                })
+                .map(v -> v != null ? v : new float[0])
                 .collect(Collectors.toList());
     }
 }
@@ -24,7 +24,12 @@ public class VectorDocumentEntity {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String text;
 
-    @Column(name = "embedding_json", columnDefinition = "TEXT", nullable = false)
+    /** 小端 float32 向量；旧数据只有 embedding_json，启动时迁移到本列 */
+    @Column(name = "embedding", columnDefinition = "LONGBLOB")
+    private byte[] embedding;
+
+    /** 旧的 JSON 向量列，迁移后置空，仅用于兼容未迁移的行 */
+    @Column(name = "embedding_json", columnDefinition = "TEXT")
     private String embeddingJson;
 
     @Column(name = "metadata_json", columnDefinition = "TEXT")
@@ -2,6 +2,10 @@ package com.wshg.voice.repository;
 
 import com.wshg.voice.entity.VectorDocumentEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -9,5 +13,9 @@ public interface VectorDocumentRepository extends JpaRepository<VectorDocumentEn
 
     List<VectorDocumentEntity> findBySource(String source);
 
-    void deleteBySource(String source);
+    /** 单条 DELETE 按来源删除，返回删除行数（派生的 deleteBy 方法会先加载全部实体再逐条删除） */
+    @Modifying
+    @Transactional
+    @Query("delete from VectorDocumentEntity e where e.source = :source")
+    int deleteBySource(@Param("source") String source);
 }
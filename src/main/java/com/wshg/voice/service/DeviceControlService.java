@@ -1,9 +1,11 @@
 package com.wshg.voice.service;
 
+import com.wshg.voice.config.RestTemplateConfig;
 import com.wshg.voice.entity.SmartHomeDevice;
 import com.wshg.voice.repository.SmartHomeDeviceRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.*;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
@@ -22,6 +24,7 @@ import java.util.regex.Pattern;
 public class DeviceControlService {
 
     private final SmartHomeDeviceRepository deviceRepository;
+    @Qualifier(RestTemplateConfig.DEVICE)
     private final RestTemplate restTemplate;
 
     /** 大模型回复中设备控制标记，如 [DEVICE_CTL] room=客厅 action=on */
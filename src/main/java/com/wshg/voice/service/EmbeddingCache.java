@@ -0,0 +1,209 @@
+package com.wshg.voice.service;
+
+import com.wshg.voice.config.VoiceProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * embedding 缓存：键为 模型标识（服务商/模型/维度，见 {@link EmbeddingService#modelKey()}）+ 规范化文本，值为 float[]。
+ * 按估算字节数限额，超出时按最近最少使用（LRU）淘汰。
+ * voice.embedding-cache-path 非空时启动加载、每分钟在有新条目时写出、关闭时再写出一次（临时文件 + 原子替换），
+ * 文件内按最近使用顺序存放，重启后淘汰顺序不变。返回的数组为缓存共享，调用方不得修改。
+ */
+@Slf4j
+@Component
+public class EmbeddingCache {
+
+    private static final int FILE_MAGIC = 0x45434143; // "ECAC"
+    private static final int FILE_VERSION = 1;
+    /** 每条目除键字符与向量外的估算开销（Map.Entry、String、float[] 对象头等） */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final VoiceProperties props;
+    private final LinkedHashMap<String, float[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private boolean dirty;
+    private ScheduledExecutorService flusher;
+
+    public EmbeddingCache(VoiceProperties props) {
+        this.props = props;
+    }
+
+    @PostConstruct
+    public void init() {
+        Path path = path();
+        if (!props.isEmbeddingCacheEnabled() || path == null) return;
+        if (Files.exists(path)) load(path);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "embedding-cache-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null) flusher.shutdown();
+        flush();
+    }
+
+    /** 未命中时返回 null */
+    public float[] get(String modelKey, String text) {
+        if (!props.isEmbeddingCacheEnabled() || text == null) return null;
+        String key = key(modelKey, text);
+        synchronized (this) {
+            float[] v = entries.get(key);
+            if (v != null) hits++;
+            else misses++;
+            return v;
+        }
+    }
+
+    public void put(String modelKey, String text, float[] embedding) {
+        if (!props.isEmbeddingCacheEnabled() || text == null || embedding == null) return;
+        String key = key(modelKey, text);
+        synchronized (this) {
+            float[] old = entries.put(key, embedding);
+            if (old != null) bytes -= sizeOf(key, old);
+            bytes += sizeOf(key, embedding);
+            dirty = true;
+            evict();
+        }
+    }
+
+    private void evict() {
+        long max = props.getEmbeddingCacheMaxBytes();
+        Iterator<Map.Entry<String, float[]>> it = entries.entrySet().iterator();
+        while (bytes > max && it.hasNext()) {
+            Map.Entry<String, float[]> e = it.next();
+            bytes -= sizeOf(e.getKey(), e.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        dirty = true;
+    }
+
+    /** 命中/未命中/淘汰次数、条目数与估算占用，用于评估缓存大小是否合适 */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long lookups = hits + misses;
+        m.put("enabled", props.isEmbeddingCacheEnabled());
+        m.put("entries", entries.size());
+        m.put("bytes", bytes);
+        m.put("maxBytes", props.getEmbeddingCacheMaxBytes());
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        m.put("evictions", evictions);
+        return m;
+    }
+
+    /**
+     * 规范化文本：NFKC（全角字母数字、兼容字符归一）、去首尾空白、连续空白合并为一个空格。
+     */
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).strip().replaceAll("\\s+", " ");
+    }
+
+    private static String key(String modelKey, String text) {
+        return modelKey + '\u0000' + normalize(text);
+    }
+
+    private static long sizeOf(String key, float[] v) {
+        return ENTRY_OVERHEAD + 2L * key.length() + 4L * v.length;
+    }
+
+    private Path path() {
+        String p = props.getEmbeddingCachePath();
+        return p == null || p.isBlank() ? null : Path.of(p).toAbsolutePath();
+    }
+
+    private void load(Path path) {
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                log.warn("[Embedding缓存] 文件格式不识别，忽略: {}", path);
+                return;
+            }
+            int count = in.readInt();
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    byte[] k = new byte[in.readInt()];
+                    in.readFully(k);
+                    String key = new String(k, StandardCharsets.UTF_8);
+                    float[] v = new float[in.readInt()];
+                    for (int j = 0; j < v.length; j++) v[j] = in.readFloat();
+                    float[] old = entries.put(key, v);
+                    if (old != null) bytes -= sizeOf(key, old);
+                    bytes += sizeOf(key, v);
+                }
+                evict();
+            }
+            log.info("[Embedding缓存] 已从文件加载: {} 条, 路径: {}, 耗时 {} ms", entries.size(), path, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.warn("[Embedding缓存] 加载失败: {}", path, e);
+        }
+    }
+
+    /** 有新条目时写出全部缓存：锁内复制条目（最久未用在前），锁外写临时文件后原子替换 */
+    private void flush() {
+        Path path = path();
+        if (!props.isEmbeddingCacheEnabled() || path == null) return;
+        List<Map.Entry<String, float[]>> snapshot;
+        synchronized (this) {
+            if (!dirty) return;
+            snapshot = new ArrayList<>(entries.size());
+            for (Map.Entry<String, float[]> e : entries.entrySet()) snapshot.add(Map.entry(e.getKey(), e.getValue()));
+            dirty = false;
+        }
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, float[]> e : snapshot) {
+                    byte[] k = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(k.length);
+                    out.write(k);
+                    out.writeInt(e.getValue().length);
+                    for (float f : e.getValue()) out.writeFloat(f);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("[Embedding缓存] 已写出 {} 条到 {}", snapshot.size(), path);
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            log.warn("[Embedding缓存] 写出失败: {}", path, e);
+        }
+    }
+}
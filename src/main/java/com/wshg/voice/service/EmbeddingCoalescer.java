@@ -0,0 +1,160 @@
+package com.wshg.voice.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * 单条 embedding 请求合并器：并发调用方各自提交一条文本，分发线程收集在 maxWait 毫秒内到达的请求（最多 maxBatch 条），
+ * 合并为一次批量请求，再按文本把向量分别交还各调用方的 future；同一批中的重复文本只请求一次。
+ * 同时在途的批量请求数受 concurrency 限制，全部占用时新请求在队列中继续累积，下一批因此更大。
+ */
+@Slf4j
+public class EmbeddingCoalescer {
+
+    private record Pending(String text, CompletableFuture<float[]> future) {
+    }
+
+    private final Function<List<String>, List<float[]>> batchCall;
+    private final long maxWaitNanos;
+    private final int maxBatch;
+    private final Semaphore inFlight;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService workers;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * @param batchCall 批量请求，结果须与输入一一对应（失败位置为 null）
+     */
+    public EmbeddingCoalescer(Function<List<String>, List<float[]>> batchCall, long maxWaitMillis, int maxBatch, int concurrency) {
+        this.batchCall = batchCall;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.maxBatch = Math.max(1, maxBatch);
+        int permits = Math.max(1, concurrency);
+        this.inFlight = new Semaphore(permits);
+        this.workers = Executors.newFixedThreadPool(permits, r -> {
+            Thread t = new Thread(r, "embedding-batch");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = new Thread(this::dispatchLoop, "embedding-coalescer");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /** 提交一条文本，future 在所在批次返回后完成（请求失败或合并器已停止时结果为 null） */
+    public CompletableFuture<float[]> submit(String text) {
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        if (!running) {
+            future.complete(null);
+            return future;
+        }
+        Pending pending = new Pending(text, future);
+        queue.add(pending);
+        // 入队前后合并器可能已停止并清空过队列，此时没有人再取这条请求
+        if (!running && queue.remove(pending)) future.complete(null);
+        return future;
+    }
+
+    /** 分发线程仍在运行；为 false 时调用方应直接请求 */
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        workers.shutdown();
+        failQueued();
+    }
+
+    private void failQueued() {
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Pending p : left) p.future().complete(null);
+    }
+
+    /** 分发线程因任何原因退出时停止接收新请求，并让已排队的请求以 null 结束，调用方不会一直等待 */
+    private void dispatchLoop() {
+        try {
+            dispatch();
+        } catch (RuntimeException | Error e) {
+            log.error("[Embedding] 合并分发线程异常退出，改为直接请求", e);
+        } finally {
+            running = false;
+            failQueued();
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            List<Pending> batch;
+            try {
+                inFlight.acquire();
+                batch = collect();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                workers.execute(() -> {
+                    try {
+                        run(batch);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                for (Pending p : batch) p.future().complete(null);
+                return;
+            }
+        }
+    }
+
+    /** 阻塞等待第一条请求，之后在 maxWait 内继续收集，凑满 maxBatch 条立即返回 */
+    private List<Pending> collect() throws InterruptedException {
+        List<Pending> batch = new ArrayList<>();
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatch) {
+            queue.drainTo(batch, maxBatch - batch.size());
+            if (batch.size() >= maxBatch) break;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            Pending next;
+            try {
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // 关闭中：已收集的请求照常发出，由调用方的 dispatch 循环退出
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (next == null) break;
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void run(List<Pending> batch) {
+        Map<String, List<CompletableFuture<float[]>>> byText = new LinkedHashMap<>();
+        for (Pending p : batch) byText.computeIfAbsent(p.text(), k -> new ArrayList<>()).add(p.future());
+        List<String> texts = new ArrayList<>(byText.keySet());
+        try {
+            List<float[]> embeddings = batchCall.apply(texts);
+            for (int i = 0; i < texts.size(); i++) {
+                float[] emb = i < embeddings.size() ? embeddings.get(i) : null;
+                for (CompletableFuture<float[]> f : byText.get(texts.get(i))) f.complete(emb);
+            }
+            log.debug("[Embedding] 合并请求: 调用数={}, 去重文本数={}", batch.size(), texts.size());
+        } catch (Exception e) {
+            log.error("[Embedding] 合并批量请求失败, 调用数={}", batch.size(), e);
+            for (Pending p : batch) p.future().complete(null);
+        }
+    }
+}
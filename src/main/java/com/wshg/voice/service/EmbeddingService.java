@@ -1,12 +1,16 @@
 package com.wshg.voice.service;
 
+import com.wshg.voice.config.RestTemplateConfig;
 import com.wshg.voice.config.VoiceProperties;
 import com.wshg.voice.dto.EmbeddingRequest;
 import com.wshg.voice.dto.EmbeddingResponse;
 import com.wshg.voice.dto.OllamaEmbedRequest;
 import com.wshg.voice.dto.OllamaEmbedResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -14,10 +18,19 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Embedding 服务：本地模式用 Ollama(qwen3-embedding)，线上模式用阿里云 DashScope。
+ * 结果先查 {@link EmbeddingCache}，只对未命中的文本发起请求。
+ * 并发的单条请求经 {@link EmbeddingCoalescer} 在几毫秒内合并为一次批量请求（voice.embedding-coalesce-wait-ms=0 时关闭）。
+ * 批量入库走 {@link #embedBatchForIngest(List)}，经独立限流的 {@link RestTemplateConfig#EMBEDDING_INGEST} 连接发出。
  */
 @Slf4j
 @Service
@@ -25,31 +38,130 @@ import java.util.List;
 public class EmbeddingService {
 
     private final VoiceProperties props;
+    @Qualifier(RestTemplateConfig.DASHSCOPE)
     private final RestTemplate restTemplate;
+    @Qualifier(RestTemplateConfig.LOCAL_MODEL)
+    private final RestTemplate localModelRestTemplate;
+    @Qualifier(RestTemplateConfig.EMBEDDING_INGEST)
+    private final RestTemplate ingestRestTemplate;
+    private final EmbeddingCache cache;
+    private EmbeddingCoalescer coalescer;
 
     private static final String EMBEDDINGS_PATH = "/v1/embeddings";
     private static final String OLLAMA_EMBED_PATH = "/api/embed";
 
+    @PostConstruct
+    public void init() {
+        if (props.getEmbeddingCoalesceWaitMs() <= 0) return;
+        int maxBatch = props.getEmbeddingCoalesceMaxBatch() > 0 ? props.getEmbeddingCoalesceMaxBatch() : props.getEmbeddingBatchSize();
+        coalescer = new EmbeddingCoalescer(texts -> requestBatch(texts, false), props.getEmbeddingCoalesceWaitMs(), maxBatch,
+                props.getEmbeddingCoalesceConcurrency());
+        log.info("[Embedding] 已启用请求合并: 最长等待 {} ms, 每批最多 {} 条, 并发批次 {}",
+                props.getEmbeddingCoalesceWaitMs(), maxBatch, props.getEmbeddingCoalesceConcurrency());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (coalescer != null) coalescer.shutdown();
+    }
+
     /**
      * 单条文本生成向量。
      */
     public float[] embed(String text) {
         if (text == null || text.isBlank()) return null;
-        if (isOllama()) {
-            return embedOllama(text);
+        String modelKey = modelKey();
+        float[] cached = cache.get(modelKey, text);
+        if (cached != null) return cached;
+        float[] emb = coalescer != null && coalescer.isRunning() ? awaitCoalesced(text) : isOllama() ? embedOllama(text) : embedDashScope(text);
+        cache.put(modelKey, text, emb);
+        return emb;
+    }
+
+    /** 等待所在批次返回，最长为合并等待时间加一次 embedding 请求的读超时，超时返回 null */
+    private float[] awaitCoalesced(String text) {
+        long timeoutMs = props.getEmbeddingCoalesceWaitMs()
+                + (isOllama() ? props.getHttpLocalModelReadTimeoutMs() : props.getHttpDashscopeReadTimeoutMs());
+        CompletableFuture<float[]> future = coalescer.submit(text);
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.error("[Embedding] 合并请求失败", e.getCause());
+            return null;
+        } catch (TimeoutException e) {
+            log.warn("[Embedding] 合并请求 {} ms 未返回", timeoutMs);
+            future.complete(null);
+            return null;
         }
-        return embedDashScope(text);
     }
 
     /**
-     * 批量文本生成向量。
+     * 批量文本生成向量：缓存命中的直接取用，其余按 embedding-batch-size 分批请求。
+     * 结果与 texts 一一对应；某批失败或返回数量不符时，该批对应位置为 null。
      */
     public List<float[]> embedBatch(List<String> texts) {
+        return embedBatch(texts, false);
+    }
+
+    /**
+     * 批量入库用的 {@link #embedBatch(List)}：请求经入库专用连接发出，与语音链路分开限流。
+     */
+    public List<float[]> embedBatchForIngest(List<String> texts) {
+        return embedBatch(texts, true);
+    }
+
+    private List<float[]> embedBatch(List<String> texts, boolean ingest) {
         if (texts == null || texts.isEmpty()) return List.of();
-        if (isOllama()) {
-            return embedBatchOllama(texts);
+        String modelKey = modelKey();
+        float[][] result = new float[texts.size()][];
+        List<Integer> missIndexes = new ArrayList<>();
+        List<String> missTexts = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            result[i] = cache.get(modelKey, texts.get(i));
+            if (result[i] == null) {
+                missIndexes.add(i);
+                missTexts.add(texts.get(i));
+            }
         }
-        return embedBatchDashScope(texts);
+        if (!missTexts.isEmpty()) {
+            List<float[]> fetched = requestBatch(missTexts, ingest);
+            for (int i = 0; i < missIndexes.size(); i++) {
+                float[] emb = fetched.get(i);
+                result[missIndexes.get(i)] = emb;
+                cache.put(modelKey, missTexts.get(i), emb);
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    /** 按 embedding-batch-size 分批请求，结果与 texts 一一对应，失败的批次对应位置为 null；ingest 为 true 时走入库专用连接 */
+    private List<float[]> requestBatch(List<String> texts, boolean ingest) {
+        int batchSize = Math.max(1, props.getEmbeddingBatchSize());
+        List<float[]> all = new ArrayList<>(texts.size());
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            List<String> chunk = texts.subList(from, Math.min(texts.size(), from + batchSize));
+            List<float[]> embeddings = isOllama()
+                    ? embedBatchOllama(chunk, ingest ? ingestRestTemplate : localModelRestTemplate)
+                    : embedBatchDashScope(chunk, ingest ? ingestRestTemplate : restTemplate);
+            if (embeddings.size() == chunk.size()) {
+                all.addAll(embeddings);
+            } else {
+                log.warn("[Embedding] 批量返回数量不匹配: texts={}, embeddings={}", chunk.size(), embeddings.size());
+                for (int i = 0; i < chunk.size(); i++) all.add(null);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * 当前 embedding 模型标识（服务商 + 模型 + 维度），用于按 (模型, 文本) 计算内容哈希：模型或维度变化后旧向量不再被复用。
+     */
+    public String modelKey() {
+        if (isOllama()) return "ollama/" + props.getOllamaEmbeddingModel();
+        return "dashscope/" + props.getEmbeddingModel() + "/" + props.getEmbeddingDimensions();
     }
 
     private boolean isOllama() {
@@ -69,7 +181,7 @@ public class EmbeddingService {
                 props.getEmbeddingDimensions()
         );
         try {
-            ResponseEntity<EmbeddingResponse> res = postDashScope(url, apiKey, req);
+            ResponseEntity<EmbeddingResponse> res = postDashScope(restTemplate, url, apiKey, req);
             if (res.getStatusCode().is2xxSuccessful() && res.getBody() != null) {
                 float[] emb = res.getBody().getFirstEmbedding();
                 log.debug("[Embedding] DashScope 单条成功 dim={}", emb != null ? emb.length : 0);
@@ -81,7 +193,7 @@ public class EmbeddingService {
         return null;
     }
 
-    private List<float[]> embedBatchDashScope(List<String> texts) {
+    private List<float[]> embedBatchDashScope(List<String> texts, RestTemplate client) {
         String apiKey = props.getQwenApiKey();
         if (apiKey == null || apiKey.isBlank()) {
             log.warn("未配置 qwen-api-key，无法调用 DashScope Embedding");
@@ -94,7 +206,7 @@ public class EmbeddingService {
                 props.getEmbeddingDimensions()
         );
         try {
-            ResponseEntity<EmbeddingResponse> res = postDashScope(url, apiKey, req);
+            ResponseEntity<EmbeddingResponse> res = postDashScope(client, url, apiKey, req);
             if (res.getStatusCode().is2xxSuccessful() && res.getBody() != null) {
                 return res.getBody().getAllEmbeddings();
             }
@@ -108,7 +220,7 @@ public class EmbeddingService {
         String url = buildOllamaUrl();
         OllamaEmbedRequest req = OllamaEmbedRequest.single(props.getOllamaEmbeddingModel(), text);
         try {
-            ResponseEntity<OllamaEmbedResponse> res = restTemplate.postForEntity(
+            ResponseEntity<OllamaEmbedResponse> res = localModelRestTemplate.postForEntity(
                     url, new HttpEntity<>(req, jsonHeaders()), OllamaEmbedResponse.class);
             if (res.getStatusCode().is2xxSuccessful() && res.getBody() != null) {
                 float[] emb = res.getBody().getFirstEmbedding();
@@ -121,11 +233,11 @@ public class EmbeddingService {
         return null;
     }
 
-    private List<float[]> embedBatchOllama(List<String> texts) {
+    private List<float[]> embedBatchOllama(List<String> texts, RestTemplate client) {
         String url = buildOllamaUrl();
         OllamaEmbedRequest req = OllamaEmbedRequest.batch(props.getOllamaEmbeddingModel(), texts);
         try {
-            ResponseEntity<OllamaEmbedResponse> res = restTemplate.postForEntity(
+            ResponseEntity<OllamaEmbedResponse> res = client.postForEntity(
                     url, new HttpEntity<>(req, jsonHeaders()), OllamaEmbedResponse.class);
             if (res.getStatusCode().is2xxSuccessful() && res.getBody() != null) {
                 return res.getBody().getAllEmbeddings();
@@ -154,9 +266,9 @@ public class EmbeddingService {
         return h;
     }
 
-    private ResponseEntity<EmbeddingResponse> postDashScope(String url, String apiKey, EmbeddingRequest req) {
+    private ResponseEntity<EmbeddingResponse> postDashScope(RestTemplate client, String url, String apiKey, EmbeddingRequest req) {
         HttpHeaders headers = jsonHeaders();
         headers.setBearerAuth(apiKey);
-        return restTemplate.postForEntity(url, new HttpEntity<>(req, headers), EmbeddingResponse.class);
+        return client.postForEntity(url, new HttpEntity<>(req, headers), EmbeddingResponse.class);
     }
 }
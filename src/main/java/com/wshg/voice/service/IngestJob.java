@@ -0,0 +1,92 @@
+package com.wshg.voice.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步入库任务的状态与进度，由 {@link VectorIngestService} 更新，可在任务运行中随时读取。
+ */
+public class IngestJob {
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String format;
+    private final String source;
+    /** document 格式的文件名，写入每个段落的 metadata.file */
+    private final String name;
+    private final long bytes;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile State state = State.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    /** 已读取的非空文档（行）数，document 格式为已切出的段落数 */
+    private final AtomicLong read = new AtomicLong();
+    /** 已成功入库（含本已存在）的文档数 */
+    private final AtomicLong processed = new AtomicLong();
+    /** 解析失败或 embedding 失败的文档数 */
+    private final AtomicLong failed = new AtomicLong();
+
+    public IngestJob(String id, String format, String source, String name, long bytes) {
+        this.id = id;
+        this.format = format;
+        this.source = source;
+        this.name = name;
+        this.bytes = bytes;
+    }
+
+    public String getId() { return id; }
+    public String getFormat() { return format; }
+    public String getSource() { return source; }
+    public String getName() { return name; }
+    public State getState() { return state; }
+    public long getRead() { return read.get(); }
+    public long getProcessed() { return processed.get(); }
+    public long getFailed() { return failed.get(); }
+
+    void start() {
+        startedAt = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+    void complete() {
+        finishedAt = System.currentTimeMillis();
+        state = State.COMPLETED;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        state = State.FAILED;
+    }
+
+    void addRead(long n) { read.addAndGet(n); }
+    void addProcessed(long n) { processed.addAndGet(n); }
+    void addFailed(long n) { failed.addAndGet(n); }
+
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    /** 接口返回用的进度快照；docsPerSecond 按已运行时间计算 */
+    public Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", id);
+        m.put("state", state.name());
+        m.put("format", format);
+        if (source != null) m.put("source", source);
+        if (name != null) m.put("name", name);
+        m.put("bytes", bytes);
+        m.put("read", read.get());
+        m.put("processed", processed.get());
+        m.put("failed", failed.get());
+        long elapsed = startedAt == 0 ? 0 : (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+        m.put("elapsedMs", elapsed);
+        m.put("docsPerSecond", elapsed == 0 ? 0.0 : (processed.get() + failed.get()) * 1000.0 / elapsed);
+        m.put("createdAt", createdAt);
+        if (error != null) m.put("error", error);
+        return m;
+    }
+}
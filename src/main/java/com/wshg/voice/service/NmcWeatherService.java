@@ -1,9 +1,11 @@
 package com.wshg.voice.service;
 
+import com.wshg.voice.config.RestTemplateConfig;
 import com.wshg.voice.config.VoiceProperties;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
@@ -61,7 +63,7 @@ public class NmcWeatherService {
     private final VoiceProperties props;
     private final Map<String, String> cityCodeCache = new ConcurrentHashMap<>();
 
-    public NmcWeatherService(RestTemplate restTemplate, ObjectMapper objectMapper, VoiceProperties props) {
+    public NmcWeatherService(@Qualifier(RestTemplateConfig.PUBLIC_DATA) RestTemplate restTemplate, ObjectMapper objectMapper, VoiceProperties props) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
         this.props = props;
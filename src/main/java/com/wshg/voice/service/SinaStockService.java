@@ -1,6 +1,8 @@
 package com.wshg.voice.service;
 
+import com.wshg.voice.config.RestTemplateConfig;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -57,7 +59,7 @@ public class SinaStockService {
 
     private final RestTemplate restTemplate;
 
-    public SinaStockService(RestTemplate restTemplate) {
+    public SinaStockService(@Qualifier(RestTemplateConfig.PUBLIC_DATA) RestTemplate restTemplate) {
         this.restTemplate = restTemplate;
     }
 
@@ -0,0 +1,138 @@
+package com.wshg.voice.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 长文本切段：从 Reader 逐字符读取，按句末标点（。！？；… 及 !?;）与换行切句，再把相邻句子拼成不超过 chunkSize 字符的段落，
+ * 相邻段落之间保留不超过 overlap 字符的整句重叠，保证跨段的问答仍能被检索到。单句超过 chunkSize 时按长度硬切。
+ * 只在内存中保留当前段落的句子，占用与文件大小无关。offset 为段落首字符在全文中的字符位置。
+ */
+public class TextChunker implements Iterator<TextChunker.Passage> {
+
+    public record Passage(String text, long offset, int index) {
+    }
+
+    private record Sentence(String text, long offset) {
+    }
+
+    private final Reader reader;
+    private final int chunkSize;
+    private final int overlap;
+    private final Deque<Sentence> window = new ArrayDeque<>();
+    private final StringBuilder current = new StringBuilder();
+    private int windowChars;
+    /** window 中尚未出现在任何已输出段落里的句子数 */
+    private int fresh;
+    private long position;
+    private long sentenceStart;
+    private int index;
+    private boolean eof;
+    private Passage next;
+
+    public TextChunker(Reader reader, int chunkSize, int overlap) {
+        this.reader = reader.markSupported() ? reader : new BufferedReader(reader);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.overlap = Math.max(0, Math.min(overlap, this.chunkSize / 2));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) next = advance();
+        return next != null;
+    }
+
+    @Override
+    public Passage next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Passage p = next;
+        next = null;
+        return p;
+    }
+
+    private Passage advance() {
+        while (!eof) {
+            Sentence s = readSentence();
+            if (s == null) break;
+            if (s.text().isBlank()) continue;
+            Passage p = windowChars + s.text().length() > chunkSize && fresh > 0 ? emit(s.text().length()) : null;
+            window.addLast(s);
+            windowChars += s.text().length();
+            fresh++;
+            if (p != null) return p;
+        }
+        return fresh > 0 ? emit(0) : null;
+    }
+
+    /** 输出当前窗口为一个段落，再从头部丢弃句子直到剩余不超过 overlap 且能放下下一句，作为下一段的开头 */
+    private Passage emit(int incoming) {
+        StringBuilder sb = new StringBuilder(windowChars);
+        for (Sentence s : window) sb.append(s.text());
+        Passage p = new Passage(sb.toString().strip(), window.peekFirst().offset(), index++);
+        while (!window.isEmpty() && (windowChars > overlap || windowChars + incoming > chunkSize)) {
+            windowChars -= window.pollFirst().text().length();
+        }
+        fresh = 0;
+        return p;
+    }
+
+    /** 读取下一句（含句末标点与紧随的闭合引号/括号），文件结束且无剩余字符时返回 null */
+    private Sentence readSentence() {
+        try {
+            while (true) {
+                int c = reader.read();
+                if (c < 0) {
+                    eof = true;
+                    return current.isEmpty() ? null : take();
+                }
+                position++;
+                if (current.isEmpty()) sentenceStart = position - 1;
+                current.append((char) c);
+                if (isTerminator((char) c)) {
+                    readClosers();
+                    return take();
+                }
+                if (current.length() >= chunkSize) return take();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** 句末标点后的闭合引号、括号及连续标点（如“？！”“……”）并入本句 */
+    private void readClosers() throws IOException {
+        while (current.length() < chunkSize) {
+            reader.mark(1);
+            int c = reader.read();
+            if (c < 0) return;
+            char ch = (char) c;
+            if (!isCloser(ch) && !isTerminator(ch)) {
+                reader.reset();
+                return;
+            }
+            position++;
+            current.append(ch);
+        }
+    }
+
+    private Sentence take() {
+        Sentence s = new Sentence(current.toString(), sentenceStart);
+        current.setLength(0);
+        return s;
+    }
+
+    private static boolean isTerminator(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '；' || c == '…'
+                || c == '!' || c == '?' || c == ';' || c == '\n';
+    }
+
+    private static boolean isCloser(char c) {
+        return c == '”' || c == '’' || c == '」' || c == '』' || c == '）' || c == '》' || c == '"' || c == ')';
+    }
+}
@@ -0,0 +1,248 @@
+package com.wshg.voice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wshg.voice.config.VoiceProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步批量入库：上传的语料先落到临时文件，提交为 {@link IngestJob} 后立即返回任务 id，
+ * 由独立的有界线程池（voice.vector-ingest-job-threads 个线程、最多排队 vector-ingest-job-queue 个任务）逐行读取，
+ * 每 vector-ingest-job-batch-size 条调用一次 {@link VectorStoreService#addDocuments(List, List)}，随时更新进度。
+ * <p>
+ * 支持三种格式：ndjson 每行一个 JSON 对象 {"text": "...", "metadata": {...}}（或直接是 JSON 字符串）；text 每个非空行为一条文档；
+ * document 为一篇长文本（手册、FAQ 等），由 {@link TextChunker} 按句切成 vector-chunk-size 字符、相邻重叠 vector-chunk-overlap 字符的段落，
+ * 每段 metadata 带 source、file（文件名）、offset（段首字符位置）与 passage（段序号）。读取与切段均为流式，内存占用与文件大小无关；
+ * 段落 id 为内容哈希，同一文件重复上传时未变化的段落不再请求 embedding。
+ * 任务线程为最低优先级，embedding 并发受 embedding-ingest-concurrency 限制，且不经过单条请求的合并队列，
+ * 大批量导入期间语音链路的检索请求不被排在导入之后。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorIngestService {
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_TEXT = "text";
+    public static final String FORMAT_DOCUMENT = "document";
+
+    /** 保留的已结束任务数，超出时丢弃最早的 */
+    private static final int MAX_FINISHED_JOBS = 100;
+
+    private final VectorStoreService vectorStoreService;
+    private final VoiceProperties voiceProperties;
+    private final ObjectMapper objectMapper;
+    private final Map<String, IngestJob> jobs = new LinkedHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, voiceProperties.getVectorIngestJobThreads());
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, voiceProperties.getVectorIngestJobQueue())), r -> {
+            Thread t = new Thread(r, "vector-ingest-job");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * 读取上传内容到临时文件并提交任务。排队已满时返回 null（临时文件已删除）。
+     *
+     * @param format {@link #FORMAT_NDJSON}、{@link #FORMAT_TEXT} 或 {@link #FORMAT_DOCUMENT}
+     * @param source 非空时写入每条文档 metadata.source（ndjson 中已指定 source 的不覆盖）
+     * @param name   document 格式的文件名，可为 null
+     */
+    public IngestJob submit(InputStream body, String format, String source, String name) throws IOException {
+        Path dir = voiceProperties.getTempDirPath();
+        Files.createDirectories(dir);
+        String id = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        Path file = dir.resolve("ingest_" + id + "." + format);
+        long bytes;
+        try {
+            bytes = Files.copy(body, file);
+        } catch (IOException | RuntimeException e) {
+            // 上传中断（客户端断开、磁盘写满等）时删除已写入一半的临时文件
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        IngestJob job = new IngestJob(id, format, source, name, bytes);
+        synchronized (jobs) {
+            jobs.put(id, job);
+        }
+        try {
+            executor.execute(() -> run(job, file));
+        } catch (RejectedExecutionException e) {
+            synchronized (jobs) {
+                jobs.remove(id);
+            }
+            Files.deleteIfExists(file);
+            log.warn("[向量库-导入] 任务队列已满, 拒绝导入 bytes={}", bytes);
+            return null;
+        }
+        log.info("[向量库-导入] 任务已提交 jobId={}, format={}, bytes={}", id, format, bytes);
+        return job;
+    }
+
+    public IngestJob get(String jobId) {
+        synchronized (jobs) {
+            return jobs.get(jobId);
+        }
+    }
+
+    /** 全部保留的任务，按提交顺序 */
+    public List<IngestJob> list() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    private void run(IngestJob job, Path file) {
+        job.start();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (FORMAT_DOCUMENT.equals(job.getFormat())) ingestPassages(job, reader);
+            else ingestLines(job, reader);
+            job.complete();
+            log.info("[向量库-导入] 任务完成 {}", job.toMap());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("任务被中断");
+        } catch (Exception e) {
+            log.error("[向量库-导入] 任务失败 jobId={}", job.getId(), e);
+            job.fail(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("[向量库-导入] 临时文件删除失败: {}", file);
+            }
+            evictFinished();
+        }
+    }
+
+    private void ingestLines(IngestJob job, BufferedReader reader) throws IOException, InterruptedException {
+        int batchSize = Math.max(1, voiceProperties.getVectorIngestJobBatchSize());
+        List<String> texts = new ArrayList<>(batchSize);
+        List<Map<String, Object>> metadatas = new ArrayList<>(batchSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            if (line.isBlank()) continue;
+            job.addRead(1);
+            if (!parseLine(job, line, texts, metadatas)) {
+                job.addFailed(1);
+                continue;
+            }
+            if (texts.size() >= batchSize) flush(job, texts, metadatas);
+        }
+        flush(job, texts, metadatas);
+    }
+
+    /** 长文本切段入库：边读边切，每攒满一批段落交给批量入库 */
+    private void ingestPassages(IngestJob job, BufferedReader reader) throws InterruptedException {
+        int batchSize = Math.max(1, voiceProperties.getVectorIngestJobBatchSize());
+        List<String> texts = new ArrayList<>(batchSize);
+        List<Map<String, Object>> metadatas = new ArrayList<>(batchSize);
+        TextChunker chunker = new TextChunker(reader, voiceProperties.getVectorChunkSize(), voiceProperties.getVectorChunkOverlap());
+        while (chunker.hasNext()) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            TextChunker.Passage p = chunker.next();
+            if (p.text().isEmpty()) continue;
+            job.addRead(1);
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("source", job.getSource() != null ? job.getSource() : FORMAT_DOCUMENT);
+            if (job.getName() != null) metadata.put("file", job.getName());
+            metadata.put("offset", p.offset());
+            metadata.put("passage", p.index());
+            texts.add(p.text());
+            metadatas.add(metadata);
+            if (texts.size() >= batchSize) flush(job, texts, metadatas);
+        }
+        flush(job, texts, metadatas);
+    }
+
+    /** 解析一行追加到当前批次，格式不对或缺少 text 时返回 false */
+    private boolean parseLine(IngestJob job, String line, List<String> texts, List<Map<String, Object>> metadatas) {
+        String text;
+        Map<String, Object> metadata = null;
+        if (FORMAT_NDJSON.equals(job.getFormat())) {
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                JsonNode textNode = node.isTextual() ? node : node.get("text");
+                if (textNode == null || !textNode.isTextual()) return false;
+                text = textNode.asText();
+                JsonNode meta = node.get("metadata");
+                if (meta != null && meta.isObject()) {
+                    metadata = new HashMap<>();
+                    Iterator<Map.Entry<String, JsonNode>> it = meta.fields();
+                    while (it.hasNext()) {
+                        Map.Entry<String, JsonNode> e = it.next();
+                        metadata.put(e.getKey(), objectMapper.treeToValue(e.getValue(), Object.class));
+                    }
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        } else {
+            text = line.strip();
+        }
+        if (text.isBlank()) return false;
+        if (job.getSource() != null) {
+            if (metadata == null) metadata = new HashMap<>();
+            metadata.putIfAbsent("source", job.getSource());
+        }
+        texts.add(text);
+        metadatas.add(metadata);
+        return true;
+    }
+
+    private void flush(IngestJob job, List<String> texts, List<Map<String, Object>> metadatas) {
+        if (texts.isEmpty()) return;
+        int stored = vectorStoreService.addDocuments(texts, metadatas).size();
+        job.addProcessed(stored);
+        job.addFailed(texts.size() - stored);
+        texts.clear();
+        metadatas.clear();
+    }
+
+    private void evictFinished() {
+        synchronized (jobs) {
+            long finished = jobs.values().stream().filter(IngestJob::isFinished).count();
+            Iterator<IngestJob> it = jobs.values().iterator();
+            while (finished > MAX_FINISHED_JOBS && it.hasNext()) {
+                if (it.next().isFinished()) {
+                    it.remove();
+                    finished--;
+                }
+            }
+        }
+    }
+}
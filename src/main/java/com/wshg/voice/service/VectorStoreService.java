@@ -3,31 +3,93 @@ package com.wshg.voice.service;
 import com.wshg.voice.config.VoiceProperties;
 import com.wshg.voice.entity.SmartHomeDevice;
 import com.wshg.voice.repository.SmartHomeDeviceRepository;
+import com.wshg.voice.store.Bm25Index;
+import com.wshg.voice.store.Filter;
 import com.wshg.voice.store.SearchResult;
 import com.wshg.voice.store.VectorDocument;
 import com.wshg.voice.store.VectorStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
  * 向量库服务：文档入库、语义检索。封装 Embedding + VectorStore。
+ * voice.vector-search-mode=hybrid 时另维护一份 BM25 字面索引（见 {@link Bm25Index}），随文档增删同步更新，
+ * 检索时与向量结果按倒数排名融合（RRF）。
+ * <p>
+ * 文档 id 为 (embedding 模型, 命名空间, 文本) 的内容哈希（见 {@link #contentId}），命名空间取自元数据 source、chatId、file，
+ * 不同来源的相同文本各自成文档、互不覆盖元数据；同一命名空间内相同文本再次入库时复用库中已有的 embedding，
+ * 不再调用 embedding 接口（跨命名空间的相同文本由 {@link EmbeddingCache} 命中）；设备同步按 id 比对，只删除过期文档、只为新文本请求 embedding。
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class VectorStoreService {
 
+    private static final long INGEST_RETRY_BACKOFF_MS = 500;
+    /** 参与文档 id 计算的元数据键：来源、对话记录 id、上传文件名 */
+    private static final List<String> NAMESPACE_KEYS = List.of("source", "chatId", "file");
+
     private final EmbeddingService embeddingService;
     private final VectorStore vectorStore;
     private final SmartHomeDeviceRepository deviceRepository;
     private final VoiceProperties voiceProperties;
+    /** hybrid 模式下的字面索引，其余模式为 null */
+    private Bm25Index lexicalIndex;
+    /** 批量入库的分块 embedding 线程池 */
+    private ExecutorService ingestPool;
+
+    /**
+     * 启动批量入库线程池；hybrid 模式下从向量库现有文档建立字面索引，之后经本服务的增删操作增量维护。
+     */
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, voiceProperties.getEmbeddingIngestConcurrency());
+        ingestPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "vector-ingest");
+            t.setDaemon(true);
+            return t;
+        });
+        initLexicalIndex();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ingestPool != null) ingestPool.shutdownNow();
+    }
+
+    private void initLexicalIndex() {
+        if (!"hybrid".equalsIgnoreCase(voiceProperties.getVectorSearchMode())) return;
+        long start = System.currentTimeMillis();
+        Bm25Index index = new Bm25Index(voiceProperties);
+        index.putAll(vectorStore.documents());
+        lexicalIndex = index;
+        log.info("[向量库-混合检索] BM25 字面索引已建立: {} 条, 耗时 {} ms", index.size(), System.currentTimeMillis() - start);
+    }
 
     /**
      * 添加单条文档（自动生成 embedding 并入库）。
@@ -37,18 +99,24 @@ public class VectorStoreService {
     }
 
     /**
-     * 添加单条文档，可带元数据。
+     * 添加单条文档，可带元数据。库中已有同一命名空间的相同文本（同一 embedding 模型）时复用其 embedding，只更新元数据。
      */
     public String addDocument(String text, Map<String, Object> metadata) {
         if (text == null || text.isBlank()) return null;
-        float[] emb = embeddingService.embed(text);
+        String id = contentId(text, metadata);
+        VectorDocument existing = vectorStore.get(id);
+        if (existing != null && Objects.equals(existing.getMetadata(), metadata)) {
+            log.debug("[向量库] 文档已存在且未变化, 跳过 id={}", id);
+            return id;
+        }
+        float[] emb = existing != null ? existing.getEmbedding() : embeddingService.embed(text);
         if (emb == null) {
             log.warn("[向量库] 文档 embedding 失败: {}", text.substring(0, Math.min(50, text.length())));
             return null;
         }
-        String id = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
         VectorDocument doc = VectorDocument.of(id, text, emb, metadata);
         vectorStore.add(doc);
+        if (lexicalIndex != null) lexicalIndex.put(doc);
         log.debug("[向量库] 添加文档 id={}, textLen={}", id, text.length());
         return id;
     }
@@ -58,28 +126,271 @@ public class VectorStoreService {
      */
     public List<String> addDocuments(List<String> texts) {
         if (texts == null || texts.isEmpty()) return List.of();
-        List<float[]> embeddings = embeddingService.embedBatch(texts);
-        if (embeddings.size() != texts.size()) {
-            log.warn("批量 embedding 数量不匹配: texts={}, embeddings={}", texts.size(), embeddings.size());
+        return addDocuments(texts, null);
+    }
+
+    /**
+     * 批量添加文档：库中已有的文本复用 embedding，其余去重后按 embedding-batch-size 切块，
+     * 最多 embedding-ingest-concurrency 块同时请求 embedding（在途块满时等待其一完成再提交下一块，形成背压）；
+     * 每块返回后其文档即并入待写缓冲，攒满 vector-jdbc-batch-size 条经 {@link VectorStore#addAll} 写入一次，
+     * 块内失败的文本逐条重试（最多 embedding-ingest-retries 次），不因个别失败丢弃整批。
+     * 已存在且元数据未变的文档不重复写入；同一文本出现多次时以最后一次的元数据为准。
+     * metadatas 为 null 时不带元数据，否则与 texts 一一对应。
+     * 返回成功入库（含本已存在）的文档 id（按输入顺序），空文本与 embedding 失败的跳过。
+     */
+    public List<String> addDocuments(List<String> texts, List<Map<String, Object>> metadatas) {
+        if (texts == null || texts.isEmpty()) return List.of();
+        long start = System.currentTimeMillis();
+        String[] idOf = new String[texts.size()];
+        Map<String, Integer> lastIndex = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            if (text == null || text.isBlank()) continue;
+            idOf[i] = contentId(text, metadataAt(metadatas, i));
+            lastIndex.put(idOf[i], i);
         }
-        List<String> ids = new java.util.ArrayList<>();
-        for (int i = 0; i < texts.size() && i < embeddings.size(); i++) {
-            if (embeddings.get(i) == null) continue;
-            String id = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
-            vectorStore.add(VectorDocument.of(id, texts.get(i), embeddings.get(i)));
-            ids.add(id);
+        Set<String> stored = new HashSet<>();
+        List<VectorDocument> pending = new ArrayList<>();
+        List<String> missingIds = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : lastIndex.entrySet()) {
+            String id = e.getKey();
+            int i = e.getValue();
+            VectorDocument old = vectorStore.get(id);
+            if (old == null || old.getEmbedding() == null) {
+                missingIds.add(id);
+                continue;
+            }
+            stored.add(id);
+            Map<String, Object> metadata = metadataAt(metadatas, i);
+            if (!Objects.equals(old.getMetadata(), metadata)) {
+                pending.add(VectorDocument.of(id, texts.get(i), old.getEmbedding(), metadata));
+            }
         }
+        int reused = stored.size();
+        int written = pending.size() + ingest(missingIds, lastIndex, texts, metadatas, pending, stored);
+        List<String> ids = new ArrayList<>();
+        for (String id : idOf) {
+            if (id != null && stored.contains(id)) ids.add(id);
+        }
+        log.debug("[向量库] 批量入库: 文本数={}, 复用 embedding={}, 新 embedding={}/{}, 写入={}, 耗时 {} ms",
+                texts.size(), reused, stored.size() - reused, missingIds.size(), written, System.currentTimeMillis() - start);
         return ids;
     }
 
+    private record EmbeddedChunk(List<String> ids, List<float[]> embeddings) {
+    }
+
+    /**
+     * 为 missingIds 分块并发求 embedding 并分批写库（见 {@link #addDocuments(List, List)}），pending 为已待写的文档。
+     * 成功的 id 加入 stored，返回新 embedding 写入的文档数。
+     */
+    private int ingest(List<String> missingIds, Map<String, Integer> lastIndex, List<String> texts,
+                       List<Map<String, Object>> metadatas, List<VectorDocument> pending, Set<String> stored) {
+        int chunkSize = Math.max(1, voiceProperties.getEmbeddingBatchSize());
+        int maxInFlight = Math.max(1, voiceProperties.getEmbeddingIngestConcurrency());
+        int writeBatch = Math.max(1, voiceProperties.getVectorJdbcBatchSize());
+        CompletionService<EmbeddedChunk> completion = new ExecutorCompletionService<>(ingestPool);
+        int written = 0;
+        int next = 0;
+        int inFlight = 0;
+        try {
+            while (next < missingIds.size() || inFlight > 0) {
+                while (inFlight < maxInFlight && next < missingIds.size()) {
+                    List<String> ids = missingIds.subList(next, Math.min(next + chunkSize, missingIds.size()));
+                    List<String> chunkTexts = ids.stream().map(id -> texts.get(lastIndex.get(id))).toList();
+                    completion.submit(() -> new EmbeddedChunk(ids, embedChunk(chunkTexts)));
+                    next += ids.size();
+                    inFlight++;
+                }
+                Future<EmbeddedChunk> done = completion.take();
+                inFlight--;
+                EmbeddedChunk chunk;
+                try {
+                    chunk = done.get();
+                } catch (ExecutionException e) {
+                    // embedChunk 与 retryEmbed 已兜住请求异常，到这里说明是程序错误；该块文本计为失败（不在返回的 id 中）
+                    log.error("[向量库] 分块 embedding 意外异常, 本块文本计为失败", e.getCause());
+                    continue;
+                }
+                for (int k = 0; k < chunk.ids().size(); k++) {
+                    float[] emb = chunk.embeddings().get(k);
+                    if (emb == null) continue;
+                    String id = chunk.ids().get(k);
+                    int i = lastIndex.get(id);
+                    pending.add(VectorDocument.of(id, texts.get(i), emb, metadataAt(metadatas, i)));
+                    stored.add(id);
+                    written++;
+                }
+                if (pending.size() >= writeBatch) write(pending);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("[向量库] 批量入库被中断, 已提交 {}/{} 条文本", next, missingIds.size());
+        }
+        write(pending);
+        return written;
+    }
+
+    /** 一块文本的 embedding，结果与输入一一对应；失败位置（整块请求抛异常时为全部位置）逐条重试，仍失败的为 null */
+    private List<float[]> embedChunk(List<String> chunkTexts) {
+        List<float[]> embedded;
+        try {
+            embedded = embeddingService.embedBatchForIngest(chunkTexts);
+        } catch (RuntimeException e) {
+            log.error("[向量库] 分块 embedding 异常, 改为逐条重试 {} 条", chunkTexts.size(), e);
+            embedded = List.of();
+        }
+        List<float[]> result = new ArrayList<>(chunkTexts.size());
+        int failed = 0;
+        for (int k = 0; k < chunkTexts.size(); k++) {
+            float[] emb = k < embedded.size() ? embedded.get(k) : null;
+            if (emb == null) {
+                failed++;
+                emb = retryEmbed(chunkTexts.get(k));
+            }
+            result.add(emb);
+        }
+        if (failed > 0) log.warn("[向量库] 分块 embedding 有 {}/{} 条失败, 已逐条重试", failed, chunkTexts.size());
+        return result;
+    }
+
+    private float[] retryEmbed(String text) {
+        int retries = Math.max(0, voiceProperties.getEmbeddingIngestRetries());
+        for (int attempt = 1; attempt <= retries; attempt++) {
+            try {
+                Thread.sleep(INGEST_RETRY_BACKOFF_MS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            // 直接单条批量请求，不经合并队列，也不占用语音链路的连接；单次异常只算这次失败
+            try {
+                float[] emb = embeddingService.embedBatchForIngest(List.of(text)).get(0);
+                if (emb != null) return emb;
+            } catch (RuntimeException e) {
+                log.warn("[向量库] 文档 embedding 第 {} 次重试异常: {}", attempt, e.toString());
+            }
+        }
+        log.warn("[向量库] 文档 embedding 重试 {} 次仍失败: {}", retries, text.substring(0, Math.min(50, text.length())));
+        return null;
+    }
+
+    /** 写入并清空缓冲 */
+    private void write(List<VectorDocument> pending) {
+        if (pending.isEmpty()) return;
+        List<VectorDocument> docs = new ArrayList<>(pending);
+        pending.clear();
+        vectorStore.addAll(docs);
+        if (lexicalIndex != null) lexicalIndex.putAll(docs);
+    }
+
+    private static Map<String, Object> metadataAt(List<Map<String, Object>> metadatas, int i) {
+        return metadatas != null ? metadatas.get(i) : null;
+    }
+
+    /**
+     * 文档 id：SHA-256(embedding 模型标识 + 命名空间 + 文本) 的前 16 位十六进制。
+     * 命名空间由元数据中的 {@link #NAMESPACE_KEYS} 组成（如 source=chat 再加 chatId，上传段落再加 file），
+     * 同一来源下相同文本得到相同 id，不同来源、不同对话轮次的相同文本互不覆盖；
+     * 切换模型或维度后 id 随之改变，旧向量不会被误用。
+     */
+    private String contentId(String text, Map<String, Object> metadata) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(embeddingService.modelKey().getBytes(StandardCharsets.UTF_8));
+            for (String key : NAMESPACE_KEYS) {
+                Object value = metadata != null ? metadata.get(key) : null;
+                digest.update((byte) 0);
+                if (value != null) digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * 语义检索：根据查询文本，返回最相似的 TopK 文档。
      */
     public List<SearchResult> search(String query, int topK) {
+        return search(query, topK, null);
+    }
+
+    /**
+     * 语义检索，只在元数据满足 filter 的文档中取 TopK（如只查 source=device 的设备文档）。
+     * hybrid 模式下向量与 BM25 各取 vector-hybrid-candidates 个候选按 RRF 融合；查询 embedding 失败时只用字面结果。
+     */
+    public List<SearchResult> search(String query, int topK, Filter filter) {
         if (query == null || query.isBlank()) return List.of();
         float[] queryEmb = embeddingService.embed(query);
-        if (queryEmb == null) return List.of();
-        return vectorStore.search(queryEmb, topK);
+        Bm25Index lexical = lexicalIndex;
+        if (lexical == null) {
+            if (queryEmb == null) return List.of();
+            return vectorStore.search(queryEmb, topK, filter);
+        }
+        int depth = Math.max(topK, voiceProperties.getVectorHybridCandidates());
+        List<SearchResult> vector = queryEmb != null ? vectorStore.search(queryEmb, depth, filter) : List.of();
+        List<SearchResult> lexicalHits = lexical.search(query, depth, filter);
+        return fuse(vector, lexicalHits, topK);
+    }
+
+    /**
+     * 批量语义检索：一次 embedBatch 求出所有查询向量，再经 {@link VectorStore#searchBatch} 一遍扫描完成检索。
+     * 结果与 queries 一一对应，空查询或 embedding 失败的查询对应空列表；hybrid 模式下逐条与字面结果融合。
+     */
+    public List<List<SearchResult>> searchBatch(List<String> queries, int topK, Filter filter) {
+        if (queries == null || queries.isEmpty()) return List.of();
+        List<String> texts = new ArrayList<>(queries.size());
+        for (String q : queries) texts.add(q == null || q.isBlank() ? null : q);
+        List<String> nonBlank = texts.stream().filter(t -> t != null).collect(Collectors.toList());
+        List<float[]> embedded = nonBlank.isEmpty() ? List.of() : embeddingService.embedBatch(nonBlank);
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        int next = 0;
+        for (String t : texts) {
+            embeddings.add(t != null && next < embedded.size() ? embedded.get(next++) : null);
+        }
+        Bm25Index lexical = lexicalIndex;
+        if (lexical == null) return vectorStore.searchBatch(embeddings, topK, filter);
+        int depth = Math.max(topK, voiceProperties.getVectorHybridCandidates());
+        List<List<SearchResult>> vector = vectorStore.searchBatch(embeddings, depth, filter);
+        List<List<SearchResult>> results = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            if (texts.get(i) == null) {
+                results.add(List.of());
+                continue;
+            }
+            results.add(fuse(vector.get(i), lexical.search(texts.get(i), depth, filter), topK));
+        }
+        return results;
+    }
+
+    /**
+     * 倒数排名融合：文档得分为其在各路结果中 1/(k + 名次) 之和，按融合分取前 topK。
+     * 返回结果的 score 保留余弦相似度（只被字面命中的为 0），lexicalScore 为 BM25 得分。
+     */
+    private List<SearchResult> fuse(List<SearchResult> vector, List<SearchResult> lexical, int topK) {
+        int k = voiceProperties.getVectorHybridRrfK();
+        Map<String, SearchResult> merged = new LinkedHashMap<>();
+        Map<String, Double> fused = new HashMap<>();
+        for (int i = 0; i < vector.size(); i++) {
+            SearchResult r = vector.get(i);
+            String id = r.getDocument().getId();
+            merged.put(id, SearchResult.builder().document(r.getDocument()).score(r.getScore()).build());
+            fused.merge(id, 1.0 / (k + i + 1), Double::sum);
+        }
+        for (int i = 0; i < lexical.size(); i++) {
+            SearchResult r = lexical.get(i);
+            String id = r.getDocument().getId();
+            merged.computeIfAbsent(id, x -> SearchResult.builder().document(r.getDocument()).build())
+                    .setLexicalScore(r.getScore());
+            fused.merge(id, 1.0 / (k + i + 1), Double::sum);
+        }
+        return merged.values().stream()
+                .sorted(Comparator.comparingDouble((SearchResult r) -> fused.get(r.getDocument().getId())).reversed())
+                .limit(topK)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -97,8 +408,10 @@ public class VectorStoreService {
             return "";
         }
         double minScore = voiceProperties.getRagMinScore();
+        // 混合检索中被字面命中的文档放宽到 rag-hybrid-min-score（如「关卧室灯」这类短指令），但仍要求一定的语义相似度
+        double lexicalMinScore = Math.min(minScore, voiceProperties.getRagHybridMinScore());
         List<SearchResult> filtered = results.stream()
-                .filter(r -> r.getScore() >= minScore)
+                .filter(r -> r.getScore() >= minScore || (r.getLexicalScore() > 0 && r.getScore() >= lexicalMinScore))
                 .collect(Collectors.toList());
         if (filtered.isEmpty()) {
             log.info("[向量库] RAG 检索结果相似度均低于阈值 minScore={}, 原始命中数={}, 最高分={}", minScore, results.size(), results.get(0).getScore());
@@ -116,6 +429,7 @@ public class VectorStoreService {
      */
     public void clear() {
         vectorStore.clear();
+        if (lexicalIndex != null) lexicalIndex.clear();
     }
 
     /**
@@ -130,6 +444,7 @@ public class VectorStoreService {
      */
     public void removeBySource(String source) {
         vectorStore.removeBySource(source);
+        if (lexicalIndex != null) lexicalIndex.removeBySource(source);
     }
 
     /** 设备控制输出格式说明，写入向量库后可在用户问开灯/关灯时被检索到，替代原系统提示中的固定段落 */
@@ -137,25 +452,36 @@ public class VectorStoreService {
             "设备控制输出格式：当用户要求开灯、关灯、打开或关闭某房间灯光时，先正常回复一句话（如「好的，已打开客厅灯」），然后在回复的最后一行的下一行单独输出一行：[DEVICE_CTL] room=房间名 action=on 或 action=off。房间名从用户话中识别（如客厅、卧室），未指定房间则写 room=all。例如：[DEVICE_CTL] room=客厅 action=on。开灯、关灯、打开灯光、关闭灯光、打开客厅灯、关卧室灯 等说法都会触发此格式。";
 
     /**
-     * 将设备表（smart_home_device）同步到知识库：先删 source=device 与 device_rule，再为每个已启用设备生成一条文档，并写入一条「设备控制输出格式」说明供 RAG 命中。
+     * 将设备表（smart_home_device）同步到知识库：为每个已启用设备生成一条文档，并写入一条「设备控制输出格式」说明供 RAG 命中。
+     * 按内容哈希 id 与库中 source=device / device_rule 的文档比对：删除不再需要的文档，未变化的文档不重新 embedding、不重复写入。
      * 设备增删改后可调用此方法，或由接口在变更后自动调用。
-     * @return 本次写入知识库的文档数量（含设备文档 + 1 条格式说明）
+     * @return 同步后知识库中的设备相关文档数量（含设备文档 + 1 条格式说明）
      */
     @Transactional
     public int syncFromDevices() {
-        log.info("[向量库] 开始设备表同步, 先删除 source=device 与 device_rule");
-        vectorStore.removeBySource("device");
-        vectorStore.removeBySource("device_rule");
+        log.info("[向量库] 开始设备表同步");
         List<SmartHomeDevice> devices = deviceRepository.findAll();
-        int added = 0;
+        List<String> texts = new ArrayList<>();
+        List<Map<String, Object>> metadatas = new ArrayList<>();
         for (SmartHomeDevice d : devices) {
             if (!Boolean.TRUE.equals(d.getEnabled())) continue;
-            String text = DeviceToVectorHelper.buildText(d);
-            Map<String, Object> metadata = DeviceToVectorHelper.buildMetadata(d);
-            if (addDocument(text, metadata) != null) added++;
+            texts.add(DeviceToVectorHelper.buildText(d));
+            metadatas.add(DeviceToVectorHelper.buildMetadata(d));
+        }
+        texts.add(DEVICE_CTL_RULE_TEXT);
+        metadatas.add(Map.of("source", "device_rule"));
+        Set<String> wanted = new HashSet<>();
+        for (int i = 0; i < texts.size(); i++) wanted.add(contentId(texts.get(i), metadatas.get(i)));
+        int removed = 0;
+        for (VectorDocument doc : vectorStore.documents(Filter.in("source", List.of("device", "device_rule")))) {
+            if (wanted.contains(doc.getId())) continue;
+            vectorStore.remove(doc.getId());
+            if (lexicalIndex != null) lexicalIndex.remove(doc.getId());
+            removed++;
         }
-        if (addDocument(DEVICE_CTL_RULE_TEXT, Map.of("source", "device_rule")) != null) added++;
-        log.info("[向量库] 设备表同步完成: 设备总数={}, 写入文档数={}, 当前库总量={}", devices.size(), added, vectorStore.size());
+        int added = addDocuments(texts, metadatas).size();
+        log.info("[向量库] 设备表同步完成: 设备总数={}, 同步文档数={}, 删除过期文档数={}, 当前库总量={}",
+                devices.size(), added, removed, vectorStore.size());
         return added;
     }
 }
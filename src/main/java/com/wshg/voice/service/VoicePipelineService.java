@@ -1,5 +1,6 @@
 package com.wshg.voice.service;
 
+import com.wshg.voice.config.RestTemplateConfig;
 import com.wshg.voice.config.VoiceProperties;
 import com.wshg.voice.dto.ChatRequest;
 import com.wshg.voice.dto.ChatResponse;
@@ -7,6 +8,7 @@ import com.wshg.voice.dto.QwenTtsResponse;
 import com.wshg.voice.dto.VoiceUploadResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -37,7 +39,10 @@ import java.util.concurrent.TimeUnit;
 public class VoicePipelineService {
 
     private final VoiceProperties props;
+    @Qualifier(RestTemplateConfig.DASHSCOPE)
     private final RestTemplate restTemplate;
+    @Qualifier(RestTemplateConfig.LOCAL_MODEL)
+    private final RestTemplate localModelRestTemplate;
     private final VectorStoreService vectorStoreService;
     private final DeviceControlService deviceControlService;
     private final ChatHistoryService chatHistoryService;
@@ -214,7 +219,7 @@ public class VoicePipelineService {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         HttpEntity<ChatRequest> entity = new HttpEntity<>(req, headers);
-        ResponseEntity<ChatResponse> res = restTemplate.postForEntity(url, entity, ChatResponse.class);
+        ResponseEntity<ChatResponse> res = localModelRestTemplate.postForEntity(url, entity, ChatResponse.class);
         if (res.getBody() == null) return null;
         return res.getBody().getFirstContent();
     }
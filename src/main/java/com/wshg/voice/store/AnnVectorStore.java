@@ -0,0 +1,338 @@
+package com.wshg.voice.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 近似检索向量库基类：持久化委托给底层向量库，子类在内存中维护近似索引并负责检索。
+ * 文档按写入顺序编号为节点，删除为软删除；子类判断需要重建时，用存活文档整体重建索引。
+ * 子类的索引方法都在本类的读写锁内调用。
+ * <p>
+ * 底层内存索引为 {@link FlatVectorIndex} 时，节点只记录所在槽位，向量经 {@link #vectors} 按槽位从底层读取，
+ * 文档也取底层侧表中的同一对象（堆外模式下不含 embedding），不再为近似索引另存一份；
+ * 读取期间持有底层索引的读锁（{@link #lockVectors()}，总在本类的锁之后获取）。
+ * 底层为分段索引时槽位不稳定，节点向量改存在本类的堆内存储中（只引用文档自身的 float[]）。
+ */
+@Slf4j
+public abstract class AnnVectorStore implements VectorStore {
+
+    protected final VectorStore backing;
+    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** 与之共享向量的底层精确索引；底层不是 FlatVectorIndex 时为 null，改用 ownVectors */
+    private final FlatVectorIndex shared;
+    private final HeapVectorStorage ownVectors;
+    /** 节点 → 底层槽位（共享模式） */
+    private int[] slots = new int[64];
+    /** 下一个节点号：子类索引按插入顺序从 0 连续编号，本类据此在插入前登记节点向量 */
+    private int nextNode;
+
+    private final Map<String, Integer> nodeById = new HashMap<>();
+    private VectorDocument[] docs = new VectorDocument[64];
+    /** metadata.source → 文档 id，按来源删除时只访问受影响的文档 */
+    private final Map<String, Set<String>> idsBySource = new HashMap<>();
+
+    /** 节点向量，传给子类的近似索引 */
+    protected final NodeVectors vectors = new NodeVectors() {
+        @Override
+        public double cosine(int node, float[] unitQuery) {
+            return shared != null ? shared.cosineAt(slots[node], unitQuery) : ownVectors.cosine(node, unitQuery);
+        }
+
+        @Override
+        public float[] unitVector(int node) {
+            if (shared != null) return shared.unitVectorAt(slots[node]);
+            float[] v = ownVectors.get(node);
+            return v != null ? VectorArena.normalize(v) : null;
+        }
+    };
+
+    protected AnnVectorStore(VectorStore backing) {
+        this.backing = backing;
+        VectorIndex index = backing instanceof InMemoryVectorStore s ? s.index()
+                : backing instanceof MysqlVectorStore s ? s.index() : null;
+        this.shared = index instanceof FlatVectorIndex flat ? flat : null;
+        this.ownVectors = shared == null ? new HeapVectorStorage() : null;
+    }
+
+    /** 日志中的索引名 */
+    protected abstract String indexName();
+
+    /** 插入单位化向量并返回节点号，节点号须按插入顺序从 0 连续编号（调用方持有写锁与向量锁） */
+    protected abstract int insertNode(float[] unitVector);
+
+    /** 软删除节点（调用方持有写锁） */
+    protected abstract void deleteNode(int node);
+
+    /** 检索 topK 个未删除节点，按相似度降序（调用方持有读锁与向量锁） */
+    protected abstract List<ScoredNode> searchNodes(float[] unitQuery, int topK);
+
+    /** 丢弃全部节点，节点号从 0 重新开始（调用方持有写锁） */
+    protected abstract void resetIndex();
+
+    /** 是否需要用存活文档重建索引（调用方持有写锁与向量锁） */
+    protected abstract boolean needsRebuild();
+
+    /** 重建前丢弃全部节点，默认同 {@link #resetIndex()}；索引可借此保留与节点号无关的结构（调用方持有写锁与向量锁） */
+    protected void resetForRebuild() {
+        resetIndex();
+    }
+
+    /** 底层库由配置类直接创建、不是 Spring Bean，其后台线程、检索线程池与预写日志在这里随本库一起关闭 */
+    @Override
+    @PreDestroy
+    public void shutdown() {
+        backing.shutdown();
+    }
+
+    /** 共享模式下获取底层索引的读锁，防止读取期间槽位被改写或复用；须在本类的锁之后获取 */
+    protected void lockVectors() {
+        if (shared != null) shared.readLock().lock();
+    }
+
+    protected void unlockVectors() {
+        if (shared != null) shared.readLock().unlock();
+    }
+
+    @PostConstruct
+    public void buildIndex() {
+        long start = System.currentTimeMillis();
+        int count = 0;
+        lock.writeLock().lock();
+        lockVectors();
+        try {
+            if (shared != null) {
+                // 直接遍历底层存活槽位，避免 documents() 在堆外模式下为每条文档拷贝出完整向量
+                for (int slot = shared.nextLiveSlot(0); slot >= 0; slot = shared.nextLiveSlot(slot + 1)) {
+                    insert(shared.docAt(slot));
+                    if (++count % 50_000 == 0) log.info("[向量库-{}] 建索引进度 {}", indexName(), count);
+                }
+            } else {
+                List<VectorDocument> all = backing.documents();
+                for (VectorDocument doc : all) {
+                    insert(doc);
+                    if (++count % 50_000 == 0) log.info("[向量库-{}] 建索引进度 {}/{}", indexName(), count, all.size());
+                }
+            }
+        } finally {
+            unlockVectors();
+            lock.writeLock().unlock();
+        }
+        log.info("[向量库-{}] 建索引完成: {} 条, 耗时 {} ms", indexName(), count, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void add(VectorDocument doc) {
+        if (doc == null || doc.getId() == null || doc.getEmbedding() == null) return;
+        backing.add(doc);
+        lock.writeLock().lock();
+        lockVectors();
+        try {
+            insert(doc);
+            maybeRebuild();
+        } finally {
+            unlockVectors();
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addAll(List<VectorDocument> docs) {
+        if (docs == null) return;
+        backing.addAll(docs);
+        lock.writeLock().lock();
+        lockVectors();
+        try {
+            for (VectorDocument d : docs) {
+                if (d != null && d.getId() != null && d.getEmbedding() != null) insert(d);
+            }
+            // 覆盖写入同样留下软删除节点
+            maybeRebuild();
+        } finally {
+            unlockVectors();
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        backing.remove(id);
+        lock.writeLock().lock();
+        lockVectors();
+        try {
+            delete(id);
+            maybeRebuild();
+        } finally {
+            unlockVectors();
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeBySource(String source) {
+        if (source == null) return;
+        backing.removeBySource(source);
+        lock.writeLock().lock();
+        lockVectors();
+        try {
+            Set<String> ids = idsBySource.remove(source);
+            if (ids != null) List.copyOf(ids).forEach(this::delete);
+            maybeRebuild();
+        } finally {
+            unlockVectors();
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        backing.clear();
+        lock.writeLock().lock();
+        lockVectors();
+        try {
+            resetIndex();
+            resetNodes();
+            nodeById.clear();
+            idsBySource.clear();
+            docs = new VectorDocument[64];
+        } finally {
+            unlockVectors();
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<VectorDocument> documents() {
+        return backing.documents();
+    }
+
+    @Override
+    public List<VectorDocument> documents(Filter filter) {
+        return backing.documents(filter);
+    }
+
+    @Override
+    public VectorDocument get(String id) {
+        return backing.get(id);
+    }
+
+    @Override
+    public List<SearchResult> search(float[] queryEmbedding, int topK) {
+        if (queryEmbedding == null || topK <= 0) return List.of();
+        float[] unitQuery = VectorArena.normalize(queryEmbedding);
+        lock.readLock().lock();
+        lockVectors();
+        try {
+            List<ScoredNode> found = searchNodes(unitQuery, topK);
+            List<SearchResult> results = new ArrayList<>(found.size());
+            for (ScoredNode c : found) {
+                results.add(SearchResult.builder()
+                        .document(docs[c.node()])
+                        .score(c.score())
+                        .build());
+            }
+            return results;
+        } finally {
+            unlockVectors();
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 带过滤的检索交给底层向量库的精确索引：过滤后的候选通常很少，按倒排位图只扫候选，
+     * 比在近似图/倒排列表上检索后再过滤更准确，也不会因过滤而凑不满 topK。
+     */
+    @Override
+    public List<SearchResult> search(float[] queryEmbedding, int topK, Filter filter) {
+        if (filter == null || filter.isEmpty()) return search(queryEmbedding, topK);
+        return backing.search(queryEmbedding, topK, filter);
+    }
+
+    /** 存活节点数（调用方持有锁） */
+    protected int liveCount() {
+        return nodeById.size();
+    }
+
+    /**
+     * 同 id 已存在时先软删除旧节点（调用方持有写锁与向量锁）。共享模式下按 id 定位底层槽位，
+     * 文档已被并发删除或底层拒绝写入时不建节点。
+     */
+    private void insert(VectorDocument doc) {
+        delete(doc.getId());
+        int node = nextNode;
+        float[] unit;
+        if (shared != null) {
+            int slot = shared.slotOf(doc.getId());
+            if (slot < 0) return;
+            doc = shared.docAt(slot);
+            unit = shared.unitVectorAt(slot);
+            if (node >= slots.length) slots = Arrays.copyOf(slots, Math.max(node + 1, slots.length * 2));
+            slots[node] = slot;
+        } else {
+            ownVectors.put(node, doc.getEmbedding());
+            unit = VectorArena.normalize(doc.getEmbedding());
+        }
+        nextNode = insertNode(unit) + 1;
+        if (node >= docs.length) docs = Arrays.copyOf(docs, Math.max(node + 1, docs.length * 2));
+        docs[node] = doc;
+        nodeById.put(doc.getId(), node);
+        String source = sourceOf(doc);
+        if (source != null) idsBySource.computeIfAbsent(source, k -> new HashSet<>()).add(doc.getId());
+    }
+
+    private void delete(String id) {
+        Integer node = nodeById.remove(id);
+        if (node == null) return;
+        String source = sourceOf(docs[node]);
+        Set<String> ids = source != null ? idsBySource.get(source) : null;
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) idsBySource.remove(source);
+        }
+        deleteNode(node);
+        docs[node] = null;
+    }
+
+    /** 节点号从 0 重新开始，丢弃节点向量映射 */
+    private void resetNodes() {
+        nextNode = 0;
+        slots = new int[64];
+        if (ownVectors != null) ownVectors.clear();
+    }
+
+    private static String sourceOf(VectorDocument doc) {
+        Map<String, Object> meta = doc.getMetadata();
+        Object source = meta != null ? meta.get("source") : null;
+        return source != null ? String.valueOf(source) : null;
+    }
+
+    /** 用存活文档重建索引（调用方持有写锁） */
+    private void maybeRebuild() {
+        if (!needsRebuild()) return;
+        long start = System.currentTimeMillis();
+        List<VectorDocument> alive = new ArrayList<>(nodeById.size());
+        for (int node : nodeById.values()) alive.add(docs[node]);
+        resetForRebuild();
+        resetNodes();
+        nodeById.clear();
+        idsBySource.clear();
+        docs = new VectorDocument[Math.max(64, alive.size())];
+        alive.forEach(this::insert);
+        log.info("[向量库-{}] 软删除过多, 已重建索引: {} 条, 耗时 {} ms",
+                indexName(), alive.size(), System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,103 @@
+package com.wshg.voice.store;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 1-bit 符号草图：每维一位，取单位向量减去每维均值后的符号，1024 维文档只占 16 个 long（128 字节）。
+ * 粗排得分为负的汉明距离，逐文档只有 XOR + {@link Long#bitCount} 的无分支循环；
+ * 汉明距离与夹角近似成正比，最优的几百个候选再用全精度余弦精排。
+ */
+public class BinarySketches implements VectorCodes<long[]> {
+
+    private final List<long[]> blocks = new ArrayList<>();
+    private final BitSet encoded = new BitSet();
+    private int dimension;
+    private int words;
+    private float[] mean;
+
+    @Override
+    public boolean isCalibrated() {
+        return mean != null;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public void calibrate(Stats stats) {
+        int dim = stats.mean().length;
+        if (dim != dimension) {
+            blocks.clear();
+            encoded.clear();
+        }
+        dimension = dim;
+        words = (dim + 63) >>> 6;
+        mean = stats.mean().clone();
+    }
+
+    @Override
+    public void encode(int slot, float[] unit) {
+        if (!isCalibrated() || unit.length != dimension) {
+            // 槽位可能曾存放其他向量，不留旧编码
+            encoded.clear(slot);
+            return;
+        }
+        int block = slot / VectorArena.SLOTS_PER_BLOCK;
+        while (blocks.size() <= block) {
+            blocks.add(new long[VectorArena.SLOTS_PER_BLOCK * words]);
+        }
+        sketch(unit, blocks.get(block), (slot % VectorArena.SLOTS_PER_BLOCK) * words);
+        encoded.set(slot);
+    }
+
+    @Override
+    public boolean isEncoded(int slot) {
+        return encoded.get(slot);
+    }
+
+    @Override
+    public void release(int slot) {
+        encoded.clear(slot);
+    }
+
+    @Override
+    public long[] prepare(float[] unitQuery) {
+        long[] q = new long[words];
+        sketch(unitQuery, q, 0);
+        return q;
+    }
+
+    /**
+     * 负汉明距离：位差越少得分越高。
+     */
+    @Override
+    public double approximate(int slot, long[] query) {
+        long[] bits = blocks.get(slot / VectorArena.SLOTS_PER_BLOCK);
+        int base = (slot % VectorArena.SLOTS_PER_BLOCK) * words;
+        int distance = 0;
+        for (int w = 0; w < query.length; w++) {
+            distance += Long.bitCount(query[w] ^ bits[base + w]);
+        }
+        return -distance;
+    }
+
+    @Override
+    public void clear() {
+        blocks.clear();
+        encoded.clear();
+        dimension = 0;
+        words = 0;
+        mean = null;
+    }
+
+    private void sketch(float[] unit, long[] out, int offset) {
+        for (int w = 0; w < words; w++) out[offset + w] = 0L;
+        for (int d = 0; d < dimension; d++) {
+            if (unit[d] > mean[d]) out[offset + (d >>> 6)] |= 1L << (d & 63);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.wshg.voice.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 向量库二进制文件格式（小端），通过 {@link FileChannel#map} 读取，向量不再经过 JSON 序列化。
+ * <pre>
+ * 文件头（32 字节）：magic "VSTB" | version | count | stride（每条向量的 float 数）| textOffset(long) | 保留
+ * 向量区：count × stride 个 float，定长步长，维度不足 stride 的向量以 0 补齐
+ * 文本区：每条文档依次为 dim | id | text | metadataJson，字符串为 int 长度 + UTF-8 字节，null 记为长度 -1；
+ *        embedding 为 null 时 dim 记为 -1（与预写日志一致），其向量区以 0 占位。版本 1 的文件没有 -1，dim 为 0 即 null
+ * </pre>
+ * 读取时向量以映射文件上的 {@link FloatBuffer} 视图交给调用方，由索引直接写入（堆外模式下不经过堆上的 float[]）。
+ * 写入先写临时文件再原子替换，避免写到一半崩溃留下损坏的文件。
+ */
+public class BinaryVectorFile {
+
+    private static final int MAGIC = 0x42545356; // 小端下的 "VSTB"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    /** 向量区按不超过该字节数分段映射，规避单个 MappedByteBuffer 2GB 的上限 */
+    private static final long MAX_MAP_BYTES = 1L << 30;
+    private static final FloatBuffer EMPTY_VECTOR = FloatBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final ObjectMapper objectMapper;
+
+    public BinaryVectorFile(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 文件是否为本格式（按文件头 magic 判断），否则按旧的 JSON 格式读取。
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) return false;
+            ByteBuffer buf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            ch.read(buf, 0);
+            return buf.getInt(0) == MAGIC;
+        }
+    }
+
+    /** 逐条读取的回调 */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * @param doc    不含 embedding 的文档
+         * @param vector 映射文件中该条向量的只读视图 [position, limit)，embedding 为 null 时为 null；
+         *               视图在各条之间复用，返回后不得再引用
+         */
+        void accept(VectorDocument doc, FloatBuffer vector);
+    }
+
+    /**
+     * 逐条读取文档并交给 sink，返回文档数。
+     */
+    public int read(Path path, Sink sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) throw new IOException("不是向量库二进制文件: " + path);
+            int version = header.getInt(4);
+            if (version != 1 && version != VERSION) throw new IOException("不支持的向量库文件版本: " + version);
+            int count = header.getInt(8);
+            int stride = header.getInt(12);
+            long textOffset = header.getLong(16);
+            long textBytes = ch.size() - textOffset;
+            if (textBytes > Integer.MAX_VALUE) throw new IOException("向量库文本区超过 2GB: " + path);
+            ByteBuffer text = ch.map(FileChannel.MapMode.READ_ONLY, textOffset, textBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+            long strideBytes = (long) stride * Float.BYTES;
+            int perSegment = stride == 0 ? count : (int) Math.max(1, MAX_MAP_BYTES / strideBytes);
+            FloatBuffer segment = null;
+            for (int i = 0; i < count; i++) {
+                if (i % perSegment == 0 && stride > 0) {
+                    int n = Math.min(perSegment, count - i);
+                    MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + i * strideBytes, n * strideBytes);
+                    segment = mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+                }
+                int dim = text.getInt();
+                String id = readString(text);
+                String docText = readString(text);
+                String metaJson = readString(text);
+                FloatBuffer vector = null;
+                if (dim > 0) {
+                    int from = (i % perSegment) * stride;
+                    vector = segment.clear().position(from).limit(from + dim);
+                } else if (dim == 0 && version > 1) {
+                    vector = EMPTY_VECTOR;
+                }
+                Map<String, Object> metadata = metaJson == null ? null
+                        : objectMapper.readValue(metaJson, new TypeReference<Map<String, Object>>() {});
+                sink.accept(VectorDocument.of(id, docText, null, metadata), vector);
+            }
+            return count;
+        }
+    }
+
+    public void write(Path path, List<VectorDocument> docs) throws IOException {
+        int stride = 0;
+        for (VectorDocument d : docs) {
+            if (d.getEmbedding() != null) stride = Math.max(stride, d.getEmbedding().length);
+        }
+        long strideBytes = (long) stride * Float.BYTES;
+        long textOffset = HEADER_BYTES + docs.size() * strideBytes;
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(docs.size()).putInt(stride).putLong(textOffset);
+            header.clear();
+            writeFully(ch, header);
+
+            ByteBuffer vec = ByteBuffer.allocate((int) strideBytes).order(ByteOrder.LITTLE_ENDIAN);
+            for (VectorDocument d : docs) {
+                vec.clear();
+                float[] emb = d.getEmbedding();
+                int dim = emb != null ? emb.length : 0;
+                for (int i = 0; i < stride; i++) vec.putFloat(i < dim ? emb[i] : 0f);
+                vec.flip();
+                writeFully(ch, vec);
+            }
+
+            for (VectorDocument d : docs) {
+                byte[] id = bytes(d.getId());
+                byte[] text = bytes(d.getText());
+                byte[] meta = d.getMetadata() == null ? null : objectMapper.writeValueAsBytes(d.getMetadata());
+                ByteBuffer rec = ByteBuffer.allocate(16 + len(id) + len(text) + len(meta)).order(ByteOrder.LITTLE_ENDIAN);
+                rec.putInt(d.getEmbedding() != null ? d.getEmbedding().length : -1);
+                putBytes(rec, id);
+                putBytes(rec, text);
+                putBytes(rec, meta);
+                rec.flip();
+                writeFully(ch, rec);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0) return null;
+        byte[] b = new byte[n];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int len(byte[] b) {
+        return b == null ? 0 : b.length;
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] b) {
+        if (b == null) {
+            buf.putInt(-1);
+            return;
+        }
+        buf.putInt(b.length);
+        buf.put(b);
+    }
+}
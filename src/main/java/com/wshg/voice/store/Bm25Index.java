@@ -0,0 +1,265 @@
+package com.wshg.voice.store;
+
+import com.wshg.voice.config.VoiceProperties;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 文档文本的 BM25 字面检索索引，与向量库并行增量维护。
+ * 中文按连续汉字切出二元、三元字组（单字串保留单字），字母数字按整词小写，因此「关卧室灯」能命中含「卧室」「室灯」的文档，
+ * 不依赖分词词典。倒排表为 词项 → 槽位位图，槽位与 {@link FlatVectorIndex} 一样复用删除后的空位；
+ * 带 filter 的检索同样先经 {@link MetadataIndex} 求候选。索引只保存 id、文本与元数据，不保存向量。
+ */
+public class Bm25Index {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /** 检索用的得分累加数组与命中槽位表，按线程复用；每次检索后只把命中过的位置清零 */
+    private static final class Scratch {
+        double[] acc = new double[0];
+        int[] touched = new int[64];
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final MetadataIndex metadataIndex;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final Map<String, BitSet> postings = new HashMap<>();
+    private VectorDocument[] docs = new VectorDocument[64];
+    /** 每个槽位的词项（升序，便于二分查找）及对应词频 */
+    private String[][] terms = new String[64][];
+    private int[][] freqs = new int[64][];
+    private int[] lengths = new int[64];
+    private long totalLength;
+    private final BitSet live = new BitSet();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int highWater;
+
+    public Bm25Index(VoiceProperties voiceProperties) {
+        Set<String> indexedKeys = new HashSet<>(voiceProperties.getVectorFilterKeys());
+        indexedKeys.add("source");
+        this.metadataIndex = new MetadataIndex(indexedKeys);
+    }
+
+    /**
+     * 切分词项：连续汉字取二元、三元字组（长度为 1 时取单字），连续字母数字取整词并转小写，其余字符作分隔。
+     */
+    public static List<String> tokenize(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (isHan(c)) {
+                int j = i;
+                while (j < n && isHan(text.charAt(j))) j++;
+                if (j - i == 1) out.add(text.substring(i, j));
+                for (int p = i; p + 2 <= j; p++) out.add(text.substring(p, p + 2));
+                for (int p = i; p + 3 <= j; p++) out.add(text.substring(p, p + 3));
+                i = j;
+            } else if (Character.isLetterOrDigit(c)) {
+                int j = i;
+                while (j < n && Character.isLetterOrDigit(text.charAt(j)) && !isHan(text.charAt(j))) j++;
+                out.add(text.substring(i, j).toLowerCase(Locale.ROOT));
+                i = j;
+            } else {
+                i++;
+            }
+        }
+        return out;
+    }
+
+    private static boolean isHan(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    /** 写入或覆盖文档（按 id），文本为空的文档不建索引 */
+    public void put(VectorDocument doc) {
+        if (doc == null || doc.getId() == null) return;
+        Map<String, Integer> tf = new HashMap<>();
+        for (String t : tokenize(doc.getText())) tf.merge(t, 1, Integer::sum);
+        lock.writeLock().lock();
+        try {
+            Integer old = slotById.remove(doc.getId());
+            if (old != null) release(old);
+            if (tf.isEmpty()) return;
+            int slot = freeSlots.isEmpty() ? highWater++ : freeSlots.pop();
+            ensureCapacity(slot + 1);
+            String[] keys = tf.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            int[] counts = new int[keys.length];
+            int length = 0;
+            for (int i = 0; i < keys.length; i++) {
+                counts[i] = tf.get(keys[i]);
+                length += counts[i];
+                postings.computeIfAbsent(keys[i], k -> new BitSet()).set(slot);
+            }
+            docs[slot] = VectorDocument.of(doc.getId(), doc.getText(), null, doc.getMetadata());
+            terms[slot] = keys;
+            freqs[slot] = counts;
+            lengths[slot] = length;
+            totalLength += length;
+            metadataIndex.add(slot, doc.getMetadata());
+            live.set(slot);
+            slotById.put(doc.getId(), slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Collection<VectorDocument> list) {
+        if (list == null) return;
+        for (VectorDocument d : list) put(d);
+    }
+
+    public void remove(String id) {
+        if (id == null) return;
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.remove(id);
+            if (slot != null) release(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 按 metadata.source 删除，经 source 倒排位图定位 */
+    public void removeBySource(String source) {
+        if (source == null) return;
+        lock.writeLock().lock();
+        try {
+            BitSet hit = metadataIndex.candidates(Filter.eq("source", source), live);
+            for (int slot = hit.nextSetBit(0); slot >= 0; slot = hit.nextSetBit(slot + 1)) {
+                slotById.remove(docs[slot].getId());
+                release(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void release(int slot) {
+        for (String t : terms[slot]) {
+            BitSet bits = postings.get(t);
+            if (bits == null) continue;
+            bits.clear(slot);
+            if (bits.isEmpty()) postings.remove(t);
+        }
+        metadataIndex.remove(slot, docs[slot].getMetadata());
+        totalLength -= lengths[slot];
+        live.clear(slot);
+        docs[slot] = null;
+        terms[slot] = null;
+        freqs[slot] = null;
+        lengths[slot] = 0;
+        freeSlots.push(slot);
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= docs.length) return;
+        int cap = Math.max(n, docs.length * 2);
+        docs = Arrays.copyOf(docs, cap);
+        terms = Arrays.copyOf(terms, cap);
+        freqs = Arrays.copyOf(freqs, cap);
+        lengths = Arrays.copyOf(lengths, cap);
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slotById.clear();
+            postings.clear();
+            metadataIndex.clear();
+            live.clear();
+            freeSlots.clear();
+            docs = new VectorDocument[64];
+            terms = new String[64][];
+            freqs = new int[64][];
+            lengths = new int[64];
+            totalLength = 0;
+            highWater = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 检索：只遍历查询词项的倒排表并累加命中槽位的得分（累加数组按线程复用，不按库大小分配），
+     * 返回得分最高的 topK，score 为 BM25 得分。
+     * 查询中重复的词项只计一次；没有任何词项命中的文档不返回。
+     */
+    public List<SearchResult> search(String query, int topK, Filter filter) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        if (queryTerms.isEmpty() || topK <= 0) return List.of();
+        lock.readLock().lock();
+        try {
+            int n = slotById.size();
+            if (n == 0) return List.of();
+            BitSet candidates = live;
+            Filter residual = null;
+            if (filter != null && !filter.isEmpty()) {
+                candidates = metadataIndex.candidates(filter, live);
+                if (!metadataIndex.covers(filter)) residual = filter;
+            }
+            double avgLength = (double) totalLength / n;
+            Scratch scratch = SCRATCH.get();
+            if (scratch.acc.length < highWater) scratch.acc = new double[Math.max(highWater, scratch.acc.length * 2)];
+            double[] acc = scratch.acc;
+            int touchedCount = 0;
+            TopKHeap top = new TopKHeap(topK);
+            try {
+                for (String term : queryTerms) {
+                    BitSet posting = postings.get(term);
+                    if (posting == null) continue;
+                    int df = posting.cardinality();
+                    double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                    for (int slot = posting.nextSetBit(0); slot >= 0; slot = posting.nextSetBit(slot + 1)) {
+                        if (candidates != live && !candidates.get(slot)) continue;
+                        int tf = freqs[slot][Arrays.binarySearch(terms[slot], term)];
+                        double norm = K1 * (1 - B + B * lengths[slot] / avgLength);
+                        // 得分恒为正，累加前为 0 即首次命中
+                        if (acc[slot] == 0) {
+                            if (touchedCount == scratch.touched.length) {
+                                scratch.touched = Arrays.copyOf(scratch.touched, touchedCount * 2);
+                            }
+                            scratch.touched[touchedCount++] = slot;
+                        }
+                        acc[slot] += idf * tf * (K1 + 1) / (tf + norm);
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    int slot = scratch.touched[i];
+                    if (residual != null && !residual.matches(docs[slot].getMetadata())) continue;
+                    top.offer(slot, acc[slot]);
+                }
+            } finally {
+                for (int i = 0; i < touchedCount; i++) acc[scratch.touched[i]] = 0;
+            }
+            top.sortDescending();
+            List<SearchResult> results = new ArrayList<>(top.size());
+            for (int i = 0; i < top.size(); i++) {
+                results.add(SearchResult.builder()
+                        .document(docs[top.slot(i)])
+                        .score(top.score(i))
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.wshg.voice.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * embedding 与小端 float32 字节数组互转，用于 MySQL embedding BLOB 列。
+ */
+public final class EmbeddingBytes {
+
+    private EmbeddingBytes() {
+    }
+
+    public static byte[] toBytes(float[] embedding) {
+        if (embedding == null) return null;
+        ByteBuffer buf = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buf.asFloatBuffer().put(embedding);
+        return buf.array();
+    }
+
+    /** 长度不是 4 的倍数或为空时返回 null */
+    public static float[] fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length == 0 || bytes.length % Float.BYTES != 0) return null;
+        float[] embedding = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(embedding);
+        return embedding;
+    }
+}
@@ -0,0 +1,78 @@
+package com.wshg.voice.store;
+
+import java.util.*;
+
+/**
+ * 检索时的元数据过滤条件：不同键之间为“且”，同一键的多个取值为“或”。取值统一按字符串比较。
+ * 例如 {@code Filter.eq("source", "device").and("room", "客厅")}。
+ */
+public final class Filter {
+
+    private final Map<String, Set<String>> conditions;
+
+    private Filter(Map<String, Set<String>> conditions) {
+        this.conditions = conditions;
+    }
+
+    public static Filter eq(String key, Object value) {
+        return in(key, List.of(value));
+    }
+
+    public static Filter in(String key, Collection<?> values) {
+        return new Filter(Map.of()).and(key, values);
+    }
+
+    /**
+     * 从请求参数构造：值为集合时表示“任一取值”，否则为单值。map 为空时返回 null（不过滤）。
+     */
+    public static Filter of(Map<String, ?> map) {
+        if (map == null || map.isEmpty()) return null;
+        Filter filter = new Filter(Map.of());
+        for (Map.Entry<String, ?> e : map.entrySet()) {
+            if (e.getKey() == null || e.getValue() == null) continue;
+            filter = e.getValue() instanceof Collection<?> c ? filter.and(e.getKey(), c) : filter.and(e.getKey(), e.getValue());
+        }
+        return filter.isEmpty() ? null : filter;
+    }
+
+    public Filter and(String key, Object value) {
+        return and(key, List.of(value));
+    }
+
+    /** 追加条件；同一键重复出现时取值求交 */
+    public Filter and(String key, Collection<?> values) {
+        Set<String> set = new HashSet<>();
+        for (Object v : values) {
+            if (v != null) set.add(String.valueOf(v));
+        }
+        Map<String, Set<String>> next = new LinkedHashMap<>(conditions);
+        next.merge(key, set, (a, b) -> {
+            Set<String> both = new HashSet<>(a);
+            both.retainAll(b);
+            return both;
+        });
+        return new Filter(Collections.unmodifiableMap(next));
+    }
+
+    /** 键 → 允许的取值 */
+    public Map<String, Set<String>> conditions() {
+        return conditions;
+    }
+
+    public boolean isEmpty() {
+        return conditions.isEmpty();
+    }
+
+    public boolean matches(Map<String, Object> metadata) {
+        for (Map.Entry<String, Set<String>> e : conditions.entrySet()) {
+            Object v = metadata != null ? metadata.get(e.getKey()) : null;
+            if (v == null || !e.getValue().contains(String.valueOf(v))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return conditions.toString();
+    }
+}
@@ -0,0 +1,593 @@
+package com.wshg.voice.store;
+
+import com.wshg.voice.config.VoiceProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.FloatBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 槽位式暴力检索索引：向量按槽位存放在 {@link VectorStorage} 中，id、文本、元数据放在独立的侧表里。
+ * 删除只打墓碑（清除存活位），槽位进入空闲列表供后续写入复用。
+ * 堆外模式下侧表中的文档不再持有 embedding，需要完整文档时从 arena 读回（已单位化）。
+ * <p>
+ * voice.vector-quantization=int8|binary 时额外维护压缩编码（见 {@link Int8VectorCodes}、{@link BinarySketches}）：
+ * 先用编码粗排出若干候选，再用全精度向量精排。文档数达到 {@link #CALIBRATION_MIN_SIZE} 才启用，
+ * 此后文档数每翻倍按全部存活向量重新标定一次（直到 {@link #CALIBRATION_MAX_SIZE}）。
+ * <p>
+ * 存活文档数达到 voice.vector-parallel-threshold 时，扫描（精确扫描或量化粗排）按固定 {@link #PARTITION_SLOTS}
+ * 个槽位分区，在专用 ForkJoinPool 上并行执行，每个分区各用一个 Top-K 堆，最后合并；文档少时单线程扫描，避免拆分开销。
+ * <p>
+ * 带 {@link Filter} 的检索先用 {@link MetadataIndex} 求出候选槽位位图，只对候选打分；未索引的键逐条校验。
+ * <p>
+ * 多条查询可用 {@link #searchBatch} 一次检索：按 {@link #TILE_SLOTS} 个槽位分块，每块向量对所有查询打分后再取下一块，
+ * 向量内存每批只读一遍，块内向量在缓存中被各查询复用。
+ */
+@Slf4j
+public class FlatVectorIndex implements VectorIndex {
+
+    static final int CALIBRATION_MIN_SIZE = 1024;
+    static final int CALIBRATION_MAX_SIZE = 1 << 20;
+    /** 并行扫描时每个分区的槽位数（arena 块大小的整数倍） */
+    static final int PARTITION_SLOTS = 16 * VectorArena.SLOTS_PER_BLOCK;
+    /** 批量检索时一块的槽位数：1024 维 float 约 128KB，可留在 L2 缓存中供该批所有查询复用 */
+    static final int TILE_SLOTS = 32;
+
+    private final boolean offHeap;
+    private final VectorStorage storage;
+    /** 压缩编码，未启用量化时为 null */
+    private final VectorCodes<?> codes;
+    /** 粗排后进入精排的候选数 */
+    private final int rerankCandidates;
+    private int calibratedSize;
+    /** 并行扫描线程池，并行度为 1 时为 null */
+    private final ForkJoinPool searchPool;
+    private final int parallelThreshold;
+    private final MetadataIndex metadataIndex;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private VectorDocument[] docs = new VectorDocument[64];
+    /** 存活位：highWater 以下未置位的槽位即墓碑 */
+    private final BitSet live = new BitSet();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int highWater;
+
+    public FlatVectorIndex(VoiceProperties voiceProperties) {
+        this.offHeap = voiceProperties.isVectorOffHeap();
+        this.storage = offHeap ? new VectorArena() : new HeapVectorStorage();
+        String quantization = voiceProperties.getVectorQuantization();
+        if ("int8".equalsIgnoreCase(quantization)) {
+            this.codes = new Int8VectorCodes();
+            this.rerankCandidates = voiceProperties.getVectorRerankCandidates();
+        } else if ("binary".equalsIgnoreCase(quantization)) {
+            this.codes = new BinarySketches();
+            this.rerankCandidates = voiceProperties.getVectorSketchCandidates();
+        } else {
+            this.codes = null;
+            this.rerankCandidates = 0;
+        }
+        int parallelism = voiceProperties.getVectorSearchParallelism() > 0
+                ? voiceProperties.getVectorSearchParallelism() : Runtime.getRuntime().availableProcessors();
+        this.searchPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.parallelThreshold = voiceProperties.getVectorParallelThreshold();
+        Set<String> indexedKeys = new HashSet<>(voiceProperties.getVectorFilterKeys());
+        indexedKeys.add("source");
+        this.metadataIndex = new MetadataIndex(indexedKeys);
+    }
+
+    /**
+     * 写入或覆盖文档；向量为空或（堆外模式下）维度与已有向量不一致时拒绝写入。
+     */
+    @Override
+    public boolean put(VectorDocument doc) {
+        return doc != null && put(doc, doc.getEmbedding(), null);
+    }
+
+    /**
+     * 堆外模式下向量从缓冲区直接写入 arena，不在堆上拷贝出 float[]；堆内模式需要由文档持有数组，仍拷贝一份。
+     */
+    @Override
+    public boolean put(VectorDocument doc, FloatBuffer vector) {
+        if (doc == null) return false;
+        if (!offHeap) return VectorIndex.super.put(doc, vector);
+        return put(doc, null, vector);
+    }
+
+    /** 向量取自 embedding 或 buffer（二者至多一个非 null） */
+    private boolean put(VectorDocument doc, float[] embedding, FloatBuffer buffer) {
+        if (doc.getId() == null) return false;
+        int dimension = embedding != null ? embedding.length : buffer != null ? buffer.remaining() : -1;
+        lock.writeLock().lock();
+        try {
+            if (!storage.accepts(dimension)) {
+                log.warn("[向量索引] 拒绝写入 id={}, 向量为空或维度不一致", doc.getId());
+                return false;
+            }
+            Integer slot = slotById.get(doc.getId());
+            if (slot == null) {
+                slot = freeSlots.isEmpty() ? highWater++ : freeSlots.pop();
+                slotById.put(doc.getId(), slot);
+            }
+            if (slot >= docs.length) {
+                docs = Arrays.copyOf(docs, Math.max(slot + 1, docs.length * 2));
+            }
+            if (docs[slot] != null) metadataIndex.remove(slot, docs[slot].getMetadata());
+            if (buffer != null) storage.put(slot, buffer);
+            else storage.put(slot, embedding);
+            docs[slot] = offHeap ? withoutEmbedding(doc) : doc;
+            metadataIndex.add(slot, doc.getMetadata());
+            live.set(slot);
+            if (codes != null) {
+                // 覆盖写入时先丢弃旧向量的编码，新向量未能编码时粗排直接跳过该槽位
+                codes.release(slot);
+                if (codes.isCalibrated()) {
+                    codes.encode(slot, offHeap ? storage.get(slot) : VectorArena.normalize(embedding));
+                }
+                maybeCalibrate();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (searchPool != null) searchPool.shutdown();
+    }
+
+    @Override
+    public boolean remove(String id) {
+        if (id == null) return false;
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.remove(id);
+            if (slot == null) return false;
+            release(slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除元数据满足 filter 的文档，返回删除数。已索引键经倒排位图直接定位，只访问受影响的槽位；
+     * 按 source 删除时恒走索引（source 总在索引键中）。
+     */
+    public int removeMatching(Filter filter) {
+        if (filter == null || filter.isEmpty()) return 0;
+        lock.writeLock().lock();
+        try {
+            BitSet candidates = metadataIndex.candidates(filter, live);
+            if (candidates == live) candidates = (BitSet) live.clone();
+            boolean residual = !metadataIndex.covers(filter);
+            int removed = 0;
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                VectorDocument doc = docs[slot];
+                if (residual && !filter.matches(doc.getMetadata())) continue;
+                slotById.remove(doc.getId());
+                release(slot);
+                removed++;
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int removeBySource(String source) {
+        return removeMatching(Filter.eq("source", source));
+    }
+
+    private void release(int slot) {
+        live.clear(slot);
+        metadataIndex.remove(slot, docs[slot].getMetadata());
+        docs[slot] = null;
+        storage.release(slot);
+        if (codes != null) codes.release(slot);
+        freeSlots.push(slot);
+    }
+
+    /**
+     * 文档数首次达到或比上次标定翻倍时，按全部存活向量的每维统计重新标定编码并重编码（调用方持有写锁）。
+     */
+    private void maybeCalibrate() {
+        int size = slotById.size();
+        if (size < CALIBRATION_MIN_SIZE || calibratedSize >= CALIBRATION_MAX_SIZE || size < 2 * calibratedSize) return;
+        long start = System.currentTimeMillis();
+        int dim = 0;
+        int count = 0;
+        float[] min = null;
+        float[] max = null;
+        double[] sum = null;
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            float[] unit = VectorArena.normalize(storage.get(slot));
+            if (min == null) {
+                dim = unit.length;
+                min = unit.clone();
+                max = unit.clone();
+                sum = new double[dim];
+            }
+            if (unit.length != dim) continue;
+            for (int d = 0; d < dim; d++) {
+                if (unit[d] < min[d]) min[d] = unit[d];
+                if (unit[d] > max[d]) max[d] = unit[d];
+                sum[d] += unit[d];
+            }
+            count++;
+        }
+        float[] mean = new float[dim];
+        for (int d = 0; d < dim; d++) mean[d] = (float) (sum[d] / count);
+        codes.calibrate(new VectorCodes.Stats(min, max, mean));
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            codes.encode(slot, VectorArena.normalize(storage.get(slot)));
+        }
+        calibratedSize = size;
+        log.info("[向量索引] {} 编码已标定: 文档数={}, 维度={}, 耗时 {} ms",
+                codes.getClass().getSimpleName(), size, codes.dimension(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slotById.clear();
+            docs = new VectorDocument[64];
+            live.clear();
+            freeSlots.clear();
+            highWater = 0;
+            storage.clear();
+            metadataIndex.clear();
+            if (codes != null) codes.clear();
+            calibratedSize = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 导出全部完整文档（含 embedding），用于持久化。
+     */
+    @Override
+    public List<VectorDocument> documents() {
+        lock.readLock().lock();
+        try {
+            List<VectorDocument> list = new ArrayList<>(slotById.size());
+            for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+                VectorDocument doc = docs[slot];
+                list.add(offHeap ? withEmbedding(doc, storage.get(slot)) : doc);
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<VectorDocument> documents(Filter filter) {
+        if (filter == null || filter.isEmpty()) return documents();
+        lock.readLock().lock();
+        try {
+            BitSet candidates = metadataIndex.candidates(filter, live);
+            boolean residual = !metadataIndex.covers(filter);
+            List<VectorDocument> list = new ArrayList<>();
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                VectorDocument doc = docs[slot];
+                if (residual && !filter.matches(doc.getMetadata())) continue;
+                list.add(offHeap ? withEmbedding(doc, storage.get(slot)) : doc);
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsMatching(Filter filter) {
+        if (filter == null || filter.isEmpty()) return size() > 0;
+        lock.readLock().lock();
+        try {
+            BitSet candidates = metadataIndex.candidates(filter, live);
+            boolean residual = !metadataIndex.covers(filter);
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                if (!residual || filter.matches(docs[slot].getMetadata())) return true;
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public VectorDocument get(String id) {
+        if (id == null) return null;
+        lock.readLock().lock();
+        try {
+            Integer slot = slotById.get(id);
+            if (slot == null) return null;
+            return offHeap ? withEmbedding(docs[slot], storage.get(slot)) : docs[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 读锁：近似索引按槽位读取本索引的向量期间持有，防止槽位被改写或复用 */
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    /** id 所在槽位，不存在时返回 -1（调用方持有读锁） */
+    int slotOf(String id) {
+        Integer slot = slotById.get(id);
+        return slot != null ? slot : -1;
+    }
+
+    /** 下一个存活槽位，没有时返回 -1（调用方持有读锁） */
+    int nextLiveSlot(int from) {
+        return live.nextSetBit(from);
+    }
+
+    /** 槽位上的文档，堆外模式下不含 embedding（调用方持有读锁） */
+    VectorDocument docAt(int slot) {
+        return docs[slot];
+    }
+
+    /** 槽位向量与单位化查询的余弦相似度，槽位已释放或维度不一致时返回 NaN（调用方持有读锁） */
+    double cosineAt(int slot, float[] unitQuery) {
+        return storage.cosine(slot, unitQuery);
+    }
+
+    /** 槽位向量的单位化副本，槽位已释放时返回 null（调用方持有读锁） */
+    float[] unitVectorAt(int slot) {
+        float[] v = storage.get(slot);
+        return v == null || offHeap ? v : VectorArena.normalize(v);
+    }
+
+    /**
+     * 暴力扫描全部存活槽位，用定长小顶堆保留 topK，只为最终结果创建 {@link SearchResult}。
+     * 启用量化且已标定时先粗排再精排。
+     */
+    @Override
+    public List<SearchResult> search(float[] queryEmbedding, int topK) {
+        return search(queryEmbedding, topK, null);
+    }
+
+    /**
+     * 按元数据过滤后检索：已索引键先经倒排位图求出候选槽位，其余键在打分前逐条校验。filter 为空时等同不过滤。
+     */
+    @Override
+    public List<SearchResult> search(float[] queryEmbedding, int topK, Filter filter) {
+        if (queryEmbedding == null || topK <= 0) return List.of();
+        float[] unitQuery = VectorArena.normalize(queryEmbedding);
+        lock.readLock().lock();
+        try {
+            BitSet candidates = live;
+            int count = slotById.size();
+            Filter residual = null;
+            if (filter != null && !filter.isEmpty()) {
+                candidates = metadataIndex.candidates(filter, live);
+                if (candidates != live) count = candidates.cardinality();
+                if (!metadataIndex.covers(filter)) residual = filter;
+            }
+            if (count == 0) return List.of();
+            TopKHeap top = useQuantized(unitQuery, topK, count)
+                    ? searchQuantized(codes, unitQuery, topK, candidates, count, residual)
+                    : searchExact(unitQuery, topK, candidates, count, residual);
+            top.sortDescending();
+            List<SearchResult> results = new ArrayList<>(top.size());
+            for (int i = 0; i < top.size(); i++) {
+                results.add(SearchResult.builder()
+                        .document(docs[top.slot(i)])
+                        .score(top.score(i))
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 批量检索：所有查询共用同一 filter，结果与 queries 一一对应（查询向量为 null 时对应空列表）。
+     * 精确检索时按块扫描一遍向量，为每条查询各维护一个 Top-K 堆；启用量化且已标定时逐条走量化粗排 + 精排。
+     */
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queries, int topK, Filter filter) {
+        if (queries == null || queries.isEmpty()) return List.of();
+        List<List<SearchResult>> results = new ArrayList<>(queries.size());
+        if (topK <= 0) {
+            for (int i = 0; i < queries.size(); i++) results.add(List.of());
+            return results;
+        }
+        if (codes != null && codes.isCalibrated()) {
+            for (float[] q : queries) results.add(q == null ? List.of() : search(q, topK, filter));
+            return results;
+        }
+        float[][] unitQueries = new float[queries.size()][];
+        for (int i = 0; i < unitQueries.length; i++) {
+            if (queries.get(i) != null) unitQueries[i] = VectorArena.normalize(queries.get(i));
+        }
+        lock.readLock().lock();
+        try {
+            BitSet candidates = live;
+            int count = slotById.size();
+            Filter residual = null;
+            if (filter != null && !filter.isEmpty()) {
+                candidates = metadataIndex.candidates(filter, live);
+                if (candidates != live) count = candidates.cardinality();
+                if (!metadataIndex.covers(filter)) residual = filter;
+            }
+            TopKHeap[] tops = count == 0 ? new TopKHeap[0] : scanBatch(candidates, count, topK, residual, unitQueries);
+            for (int q = 0; q < unitQueries.length; q++) {
+                if (unitQueries[q] == null || count == 0) {
+                    results.add(List.of());
+                    continue;
+                }
+                TopKHeap top = tops[q];
+                top.sortDescending();
+                List<SearchResult> list = new ArrayList<>(top.size());
+                for (int i = 0; i < top.size(); i++) {
+                    list.add(SearchResult.builder()
+                            .document(docs[top.slot(i)])
+                            .score(top.score(i))
+                            .build());
+                }
+                results.add(list);
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 多查询分块扫描（调用方持有读锁），分区并行规则与 {@link #scan} 相同。
+     */
+    private TopKHeap[] scanBatch(BitSet candidates, int count, int k, Filter residual, float[][] unitQueries) {
+        int end = highWater;
+        if (searchPool == null || count < parallelThreshold || end <= PARTITION_SLOTS) {
+            TopKHeap[] tops = newHeaps(unitQueries.length, k);
+            scanTiles(candidates, 0, end, residual, unitQueries, tops);
+            return tops;
+        }
+        List<ForkJoinTask<TopKHeap[]>> tasks = new ArrayList<>();
+        for (int from = 0; from < end; from += PARTITION_SLOTS) {
+            int start = from;
+            int to = Math.min(end, from + PARTITION_SLOTS);
+            tasks.add(searchPool.submit(() -> {
+                TopKHeap[] part = newHeaps(unitQueries.length, k);
+                scanTiles(candidates, start, to, residual, unitQueries, part);
+                return part;
+            }));
+        }
+        TopKHeap[] tops = newHeaps(unitQueries.length, k);
+        for (ForkJoinTask<TopKHeap[]> task : tasks) {
+            TopKHeap[] part = task.join();
+            for (int q = 0; q < tops.length; q++) {
+                for (int i = 0; i < part[q].size(); i++) tops[q].offer(part[q].slot(i), part[q].score(i));
+            }
+        }
+        return tops;
+    }
+
+    private static TopKHeap[] newHeaps(int n, int k) {
+        TopKHeap[] heaps = new TopKHeap[n];
+        for (int i = 0; i < n; i++) heaps[i] = new TopKHeap(k);
+        return heaps;
+    }
+
+    /** 收集至多 TILE_SLOTS 个候选槽位为一块，块内向量依次与每条查询打分 */
+    private void scanTiles(BitSet candidates, int from, int to, Filter residual, float[][] unitQueries, TopKHeap[] tops) {
+        int[] tile = new int[TILE_SLOTS];
+        int slot = candidates.nextSetBit(from);
+        while (slot >= 0 && slot < to) {
+            int n = 0;
+            while (n < TILE_SLOTS && slot >= 0 && slot < to) {
+                if (residual == null || residual.matches(docs[slot].getMetadata())) tile[n++] = slot;
+                slot = candidates.nextSetBit(slot + 1);
+            }
+            for (int q = 0; q < unitQueries.length; q++) {
+                float[] query = unitQueries[q];
+                if (query == null) continue;
+                TopKHeap top = tops[q];
+                for (int i = 0; i < n; i++) {
+                    double score = storage.cosine(tile[i], query);
+                    if (!Double.isNaN(score)) top.offer(tile[i], score);
+                }
+            }
+        }
+    }
+
+    private boolean useQuantized(float[] unitQuery, int topK, int count) {
+        return codes != null && codes.isCalibrated() && codes.dimension() == unitQuery.length
+                && count > Math.max(rerankCandidates, topK);
+    }
+
+    private TopKHeap searchExact(float[] unitQuery, int topK, BitSet candidates, int count, Filter residual) {
+        return scan(candidates, count, topK, residual, slot -> storage.cosine(slot, unitQuery));
+    }
+
+    /** 压缩编码粗排出候选，再用全精度向量精排 */
+    private <Q> TopKHeap searchQuantized(VectorCodes<Q> codes, float[] unitQuery, int topK,
+                                         BitSet candidates, int count, Filter residual) {
+        Q query = codes.prepare(unitQuery);
+        TopKHeap coarse = scan(candidates, count, Math.max(rerankCandidates, topK), residual,
+                slot -> codes.isEncoded(slot) ? codes.approximate(slot, query) : Double.NaN);
+        TopKHeap top = new TopKHeap(topK);
+        for (int i = 0; i < coarse.size(); i++) {
+            int slot = coarse.slot(i);
+            double score = storage.cosine(slot, unitQuery);
+            if (!Double.isNaN(score)) top.offer(slot, score);
+        }
+        return top;
+    }
+
+    /** 槽位打分，返回 NaN 表示跳过该槽位 */
+    @FunctionalInterface
+    private interface SlotScorer {
+        double score(int slot);
+    }
+
+    /**
+     * 对候选槽位打分并保留前 k 个（调用方持有读锁）。候选数达到阈值时分区并行扫描后合并各分区的堆。
+     * residual 不为空时先校验文档元数据，不满足的槽位不打分。
+     */
+    private TopKHeap scan(BitSet candidates, int count, int k, Filter residual, SlotScorer scorer) {
+        SlotScorer effective = residual == null ? scorer
+                : slot -> residual.matches(docs[slot].getMetadata()) ? scorer.score(slot) : Double.NaN;
+        int end = highWater;
+        if (searchPool == null || count < parallelThreshold || end <= PARTITION_SLOTS) {
+            TopKHeap top = new TopKHeap(k);
+            scanRange(candidates, 0, end, top, effective);
+            return top;
+        }
+        List<ForkJoinTask<TopKHeap>> tasks = new ArrayList<>();
+        for (int from = 0; from < end; from += PARTITION_SLOTS) {
+            int start = from;
+            int to = Math.min(end, from + PARTITION_SLOTS);
+            tasks.add(searchPool.submit(() -> {
+                TopKHeap part = new TopKHeap(k);
+                scanRange(candidates, start, to, part, effective);
+                return part;
+            }));
+        }
+        TopKHeap top = new TopKHeap(k);
+        for (ForkJoinTask<TopKHeap> task : tasks) {
+            TopKHeap part = task.join();
+            for (int i = 0; i < part.size(); i++) top.offer(part.slot(i), part.score(i));
+        }
+        return top;
+    }
+
+    private static void scanRange(BitSet candidates, int from, int to, TopKHeap top, SlotScorer scorer) {
+        for (int slot = candidates.nextSetBit(from); slot >= 0 && slot < to; slot = candidates.nextSetBit(slot + 1)) {
+            double score = scorer.score(slot);
+            if (Double.isNaN(score)) continue;
+            top.offer(slot, score);
+        }
+    }
+
+    private static VectorDocument withoutEmbedding(VectorDocument doc) {
+        return VectorDocument.of(doc.getId(), doc.getText(), null, doc.getMetadata());
+    }
+
+    private static VectorDocument withEmbedding(VectorDocument doc, float[] embedding) {
+        return VectorDocument.of(doc.getId(), doc.getText(), embedding, doc.getMetadata());
+    }
+}
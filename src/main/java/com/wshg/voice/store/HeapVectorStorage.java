@@ -0,0 +1,52 @@
+package com.wshg.voice.store;
+
+import java.util.Arrays;
+
+/**
+ * 堆内向量存储：槽位直接引用文档自身的 float[]，额外只保存一份模长倒数，避免每次检索重算文档模长。
+ */
+public class HeapVectorStorage implements VectorStorage {
+
+    private float[][] vectors = new float[64][];
+    private float[] invNorms = new float[64];
+
+    @Override
+    public boolean accepts(int dimension) {
+        return dimension >= 0;
+    }
+
+    @Override
+    public void put(int slot, float[] vector) {
+        if (slot >= vectors.length) {
+            int cap = Math.max(slot + 1, vectors.length * 2);
+            vectors = Arrays.copyOf(vectors, cap);
+            invNorms = Arrays.copyOf(invNorms, cap);
+        }
+        vectors[slot] = vector;
+        double norm = VectorArena.norm(vector);
+        invNorms[slot] = norm == 0 ? 0f : (float) (1.0 / norm);
+    }
+
+    @Override
+    public void release(int slot) {
+        if (slot < vectors.length) vectors[slot] = null;
+    }
+
+    @Override
+    public double cosine(int slot, float[] unitQuery) {
+        float[] v = vectors[slot];
+        if (v == null || v.length != unitQuery.length) return Double.NaN;
+        return VectorKernels.dot(v, unitQuery) * invNorms[slot];
+    }
+
+    @Override
+    public float[] get(int slot) {
+        return slot < vectors.length ? vectors[slot] : null;
+    }
+
+    @Override
+    public void clear() {
+        vectors = new float[64][];
+        invNorms = new float[64];
+    }
+}
@@ -0,0 +1,264 @@
+package com.wshg.voice.store;
+
+import java.util.*;
+
+/**
+ * HNSW（Hierarchical Navigable Small World）近似最近邻图，相似度为余弦。
+ * 节点按插入顺序编号，图只保存邻接表，节点向量经 {@link NodeVectors} 从底层索引读取。
+ * 删除为软删除：节点仍参与图遍历，但不会出现在结果中；检索时若软删除节点挤占了候选，逐步加大 ef 直到凑满 topK。
+ * 本类不加锁：写入需串行，检索可与检索并发，由 {@link HnswVectorStore} 负责读写锁。
+ */
+public class HnswGraph {
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMult;
+    private final Random random = new Random(42);
+
+    private final NodeVectors vectors;
+    /** links[node][level]：下标 0 为邻居数，其后为邻居节点号 */
+    private int[][][] links = new int[64][][];
+    private final BitSet deleted = new BitSet();
+    private int nodeCount;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ThreadLocal<VisitedSet> visited = ThreadLocal.withInitial(VisitedSet::new);
+
+    public HnswGraph(NodeVectors vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMult = 1 / Math.log(this.m);
+    }
+
+    /**
+     * 插入节点，返回节点号。调用方须已让 {@link NodeVectors} 能按该节点号读到向量，q 为其单位化向量。
+     */
+    public int insert(float[] q) {
+        int node = nodeCount++;
+        ensureCapacity(nodeCount);
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(q, ep, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<ScoredNode> found = searchLayer(q, ep, efConstruction, l);
+            int[] selected = selectNeighbors(found, l == 0 ? maxM0 : m);
+            for (int n : selected) {
+                addLink(node, n, l);
+                addLink(n, node, l);
+            }
+            ep = found.get(0).node();
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+
+    public void markDeleted(int node) {
+        if (node < 0 || node >= nodeCount || deleted.get(node)) return;
+        deleted.set(node);
+        deletedCount++;
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * 检索与查询最相似的 topK 个未删除节点，结果按相似度降序。
+     * 底层 beam 的候选含软删除节点，过滤后不足 topK（且存活节点足够）时 ef 翻倍重搜，直到 ef 覆盖全部节点。
+     */
+    public List<ScoredNode> search(float[] unitQuery, int topK, int efSearch) {
+        if (entryPoint < 0) return List.of();
+        int ep = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            ep = greedyClosest(unitQuery, ep, l);
+        }
+        int wanted = Math.min(topK, nodeCount - deletedCount);
+        int ef = Math.max(efSearch, topK);
+        while (true) {
+            List<ScoredNode> found = searchLayer(unitQuery, ep, ef, 0);
+            List<ScoredNode> results = new ArrayList<>(Math.min(topK, found.size()));
+            for (ScoredNode c : found) {
+                if (deleted.get(c.node())) continue;
+                results.add(c);
+                if (results.size() >= topK) break;
+            }
+            if (results.size() >= wanted || ef >= nodeCount) return results;
+            ef = (int) Math.min(nodeCount, 2L * ef);
+        }
+    }
+
+    private int greedyClosest(float[] q, int ep, int level) {
+        int best = ep;
+        double bestSim = similarity(q, ep);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] nb = links[best][level];
+            for (int i = 1; i <= nb[0]; i++) {
+                double s = similarity(q, nb[i]);
+                if (s > bestSim) {
+                    bestSim = s;
+                    best = nb[i];
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 单层 beam search，返回按相似度降序的候选（最多 ef 个，含软删除节点）。
+     */
+    private List<ScoredNode> searchLayer(float[] q, int ep, int ef, int level) {
+        VisitedSet seen = visited.get();
+        seen.reset(nodeCount);
+        seen.mark(ep);
+        ScoredNode start = new ScoredNode(ep, similarity(q, ep));
+        PriorityQueue<ScoredNode> candidates = new PriorityQueue<>(Comparator.comparingDouble(ScoredNode::score).reversed());
+        PriorityQueue<ScoredNode> results = new PriorityQueue<>(Comparator.comparingDouble(ScoredNode::score));
+        candidates.add(start);
+        results.add(start);
+        while (!candidates.isEmpty()) {
+            ScoredNode c = candidates.poll();
+            if (results.size() >= ef && c.score() < results.peek().score()) break;
+            int[] nb = links[c.node()].length > level ? links[c.node()][level] : null;
+            if (nb == null) continue;
+            for (int i = 1; i <= nb[0]; i++) {
+                int e = nb[i];
+                if (!seen.mark(e)) continue;
+                double s = similarity(q, e);
+                if (results.size() < ef || s > results.peek().score()) {
+                    ScoredNode next = new ScoredNode(e, s);
+                    candidates.add(next);
+                    results.add(next);
+                    if (results.size() > ef) results.poll();
+                }
+            }
+        }
+        List<ScoredNode> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(ScoredNode::score).reversed());
+        return sorted;
+    }
+
+    /**
+     * 启发式选邻：候选按相似度降序，仅当它与查询的相似度高于与所有已选邻居的相似度时才保留，
+     * 使邻居分布在不同方向上；不足 max 个时用剩余最近候选补齐。
+     */
+    private int[] selectNeighbors(List<ScoredNode> sortedDesc, int max) {
+        int[] selected = new int[Math.min(max, sortedDesc.size())];
+        // 已选邻居的单位向量，只为入选节点读取一次
+        float[][] selectedVectors = new float[selected.length][];
+        int n = 0;
+        List<ScoredNode> pruned = new ArrayList<>();
+        for (ScoredNode c : sortedDesc) {
+            if (n >= selected.length) break;
+            boolean keep = true;
+            for (int i = 0; i < n; i++) {
+                if (similarity(selectedVectors[i], c.node()) > c.score()) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selectedVectors[n] = vectors.unitVector(c.node());
+                selected[n++] = c.node();
+            } else {
+                pruned.add(c);
+            }
+        }
+        for (int i = 0; n < selected.length && i < pruned.size(); i++) {
+            selected[n++] = pruned.get(i).node();
+        }
+        return n == selected.length ? selected : Arrays.copyOf(selected, n);
+    }
+
+    private void addLink(int from, int to, int level) {
+        int[] nb = links[from][level];
+        int max = nb.length - 1;
+        int count = nb[0];
+        for (int i = 1; i <= count; i++) {
+            if (nb[i] == to) return;
+        }
+        if (count < max) {
+            nb[count + 1] = to;
+            nb[0] = count + 1;
+            return;
+        }
+        // 邻居已满：在原邻居 + 新节点中按启发式重新挑选
+        float[] fromVector = vectors.unitVector(from);
+        List<ScoredNode> all = new ArrayList<>(count + 1);
+        for (int i = 1; i <= count; i++) all.add(new ScoredNode(nb[i], similarity(fromVector, nb[i])));
+        all.add(new ScoredNode(to, similarity(fromVector, to)));
+        all.sort(Comparator.comparingDouble(ScoredNode::score).reversed());
+        int[] selected = selectNeighbors(all, max);
+        nb[0] = selected.length;
+        System.arraycopy(selected, 0, nb, 1, selected.length);
+    }
+
+    /** 向量已释放（软删除节点的槽位）或维度不一致时按 -1 计，节点仍可被遍历但排在最后 */
+    private double similarity(float[] unitQuery, int node) {
+        if (unitQuery == null) return -1;
+        double s = vectors.cosine(node, unitQuery);
+        return Double.isNaN(s) ? -1 : s;
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - random.nextDouble()) * levelMult);
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= links.length) return;
+        links = Arrays.copyOf(links, Math.max(n, links.length * 2));
+    }
+
+    /** 线程私有的访问标记，按代数复用数组，避免每次检索分配 */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                generation = 0;
+            }
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /** 标记为已访问，若此前未访问返回 true */
+        boolean mark(int node) {
+            if (marks[node] == generation) return false;
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
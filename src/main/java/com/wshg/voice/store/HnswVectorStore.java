@@ -0,0 +1,62 @@
+package com.wshg.voice.store;
+
+import com.wshg.voice.config.VoiceProperties;
+
+import java.util.List;
+
+/**
+ * HNSW 近似检索向量库（voice.vector-store-type=hnsw）。
+ * 持久化委托给底层向量库（voice.vector-index-backend=mysql|file），本类在内存中维护 HNSW 图并负责检索，
+ * 检索耗时随文档量近似对数增长，不再全量扫描。
+ * 删除为软删除；软删除节点数超过存活节点数时整体重建图。
+ */
+public class HnswVectorStore extends AnnVectorStore {
+
+    /** 软删除节点少于该值时不重建，避免小库频繁重建 */
+    private static final int MIN_DELETED_FOR_REBUILD = 1000;
+
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+
+    private HnswGraph graph;
+
+    public HnswVectorStore(VectorStore backing, VoiceProperties voiceProperties) {
+        super(backing);
+        this.m = voiceProperties.getHnswM();
+        this.efConstruction = voiceProperties.getHnswEfConstruction();
+        this.efSearch = voiceProperties.getHnswEfSearch();
+        this.graph = new HnswGraph(vectors, m, efConstruction);
+    }
+
+    @Override
+    protected String indexName() {
+        return "HNSW";
+    }
+
+    @Override
+    protected int insertNode(float[] unitVector) {
+        return graph.insert(unitVector);
+    }
+
+    @Override
+    protected void deleteNode(int node) {
+        graph.markDeleted(node);
+    }
+
+    @Override
+    protected List<ScoredNode> searchNodes(float[] unitQuery, int topK) {
+        return graph.search(unitQuery, topK, efSearch);
+    }
+
+    @Override
+    protected void resetIndex() {
+        graph = new HnswGraph(vectors, m, efConstruction);
+    }
+
+    @Override
+    protected boolean needsRebuild() {
+        int deleted = graph.deletedCount();
+        return deleted >= MIN_DELETED_FOR_REBUILD && deleted > liveCount();
+    }
+}
@@ -3,43 +3,99 @@ package com.wshg.voice.store;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wshg.voice.config.VoiceProperties;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToLongFunction;
 
 /**
  * 内存向量库，支持余弦相似度检索。
  * 当 voice.vector-store-type=file 且配置 vector-store-path 时，启动时从文件加载、变更时持久化到文件。
+ * voice.vector-off-heap=true 时向量单位化后存放在堆外 arena 中（见 {@link VectorArena}），持久化文件中的向量也随之为单位向量。
+ * voice.vector-store-format=binary 时以 {@link BinaryVectorFile} 格式写入；加载时按文件头自动识别格式，
+ * 因此已有的 JSON 文件可直接切换为 binary，下次写入即完成转换。
+ * <p>
+ * voice.vector-wal-enabled=true 时变更只追加到预写日志（见 {@link VectorWal}），日志段过大时在后台写快照；
+ * 启动时加载快照后回放残留日志，并立即合并为新快照。
  */
 @Slf4j
-@RequiredArgsConstructor
 public class InMemoryVectorStore implements VectorStore {
 
     private final VoiceProperties voiceProperties;
     private final ObjectMapper objectMapper;
+    private final BinaryVectorFile binaryFile;
 
-    private final Map<String, VectorDocument> store = new ConcurrentHashMap<>();
+    private final VectorIndex store;
+    /** 串行化“修改索引 + 持久化”，保证日志顺序与内存一致、快照文件不被并发写 */
+    private final ReentrantLock persistLock = new ReentrantLock();
+    private VectorWal wal;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private ExecutorService compactor;
+
+    public InMemoryVectorStore(VoiceProperties voiceProperties, ObjectMapper objectMapper) {
+        this.voiceProperties = voiceProperties;
+        this.objectMapper = objectMapper;
+        this.binaryFile = new BinaryVectorFile(objectMapper);
+        this.store = VectorIndex.create(voiceProperties);
+    }
+
+    /** 内存索引，供近似检索库按槽位共享向量 */
+    VectorIndex index() {
+        return store;
+    }
 
     @PostConstruct
     public void loadFromFile() {
         String pathStr = voiceProperties.getVectorStorePath();
         if (pathStr == null || pathStr.isBlank()) return;
         Path path = Path.of(pathStr).toAbsolutePath();
-        if (!Files.exists(path)) return;
+        if (Files.exists(path)) {
+            loadSnapshot(path);
+        }
         try {
+            replayWal(path);
+            if (voiceProperties.isVectorWalEnabled()) {
+                Files.createDirectories(path.getParent());
+                wal = new VectorWal(path, objectMapper);
+                compactor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "vector-wal-compactor");
+                    t.setDaemon(true);
+                    return t;
+                });
+                log.info("[向量库-文件] 已启用预写日志, 压缩阈值 {} 字节", voiceProperties.getVectorWalCompactBytes());
+            }
+        } catch (IOException e) {
+            log.warn("[向量库-文件] 预写日志初始化失败，回退为整文件持久化: {}", path, e);
+            wal = null;
+        }
+    }
+
+    private void loadSnapshot(Path path) {
+        try {
+            long start = System.currentTimeMillis();
+            if (BinaryVectorFile.isBinary(path)) {
+                binaryFile.read(path, store::put);
+                log.info("向量库已从二进制文件加载: {} 条, 路径: {}, 耗时 {} ms", store.size(), path, System.currentTimeMillis() - start);
+                return;
+            }
             String json = Files.readString(path);
             List<VectorDocument> list = objectMapper.readValue(json, new TypeReference<>() {});
             if (list != null) {
                 for (VectorDocument d : list) {
-                    if (d != null && d.getId() != null) store.put(d.getId(), d);
+                    store.put(d);
                 }
                 log.info("向量库已从文件加载: {} 条, 路径: {}", store.size(), path);
             }
@@ -48,40 +104,151 @@ public class InMemoryVectorStore implements VectorStore {
         }
     }
 
+    /**
+     * 回放快照旁残留的日志段（上次未压缩或压缩中断），随后写出新快照并删除这些日志段。
+     * 关闭预写日志后残留的日志同样在此合并。
+     */
+    private void replayWal(Path path) throws IOException {
+        List<Path> segments = VectorWal.segments(path);
+        if (segments.isEmpty()) return;
+        int replayed = VectorWal.replay(path, objectMapper, entry -> {
+            switch (entry.op()) {
+                case PUT -> store.put(entry.doc());
+                case DELETE -> store.remove(entry.key());
+                case REMOVE_BY_SOURCE -> store.removeBySource(entry.key());
+                case CLEAR -> store.clear();
+            }
+        });
+        writeSnapshot(path, store.documents());
+        for (Path segment : segments) Files.deleteIfExists(segment);
+        log.info("[向量库-文件] 已回放预写日志: {} 段, {} 条记录, 当前文档数={}", segments.size(), replayed, store.size());
+    }
+
     private void saveToFile() {
         String pathStr = voiceProperties.getVectorStorePath();
         if (pathStr == null || pathStr.isBlank()) return;
         Path path = Path.of(pathStr).toAbsolutePath();
         try {
-            Files.createDirectories(path.getParent());
-            List<VectorDocument> list = new ArrayList<>(store.values());
-            String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(list);
-            Files.writeString(path, json);
+            writeSnapshot(path, store.documents());
         } catch (IOException e) {
             log.warn("向量库持久化失败: {}", path, e);
         }
     }
 
+    /** 写出完整快照：先写临时文件再原子替换 */
+    private void writeSnapshot(Path path, List<VectorDocument> list) throws IOException {
+        Files.createDirectories(path.getParent());
+        if (isBinaryFormat()) {
+            binaryFile.write(path, list);
+            return;
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(tmp, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(list));
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean isBinaryFormat() {
+        return "binary".equalsIgnoreCase(voiceProperties.getVectorStoreFormat());
+    }
+
+    /**
+     * 持久化并修改索引。预写日志模式下在锁内先追加日志、追加成功后才修改内存，锁外等待成组 fsync；
+     * 追加或落盘失败时向调用方抛出 {@link UncheckedIOException}，等待落盘被中断时抛出 {@link IllegalStateException}。
+     * 落盘失败时这批记录是否在磁盘上未知，随即压缩为快照，把内存中已生效的变更重新落盘。
+     * 未启用日志时先修改内存再在锁内重写整个文件，apply 返回 false 表示没有实际变更，不重写。
+     */
+    private void commit(BooleanSupplier apply, ToLongFunction<VectorWal> record) {
+        long position;
+        persistLock.lock();
+        try {
+            if (wal == null) {
+                if (apply.getAsBoolean()) saveToFile();
+                return;
+            }
+            position = record.applyAsLong(wal);
+            apply.getAsBoolean();
+        } finally {
+            persistLock.unlock();
+        }
+        try {
+            wal.awaitDurable(position);
+        } catch (UncheckedIOException e) {
+            log.warn("[向量库-文件] 预写日志落盘失败，立即压缩为快照", e);
+            scheduleCompact();
+            throw e;
+        }
+        if (wal.segmentBytes() >= voiceProperties.getVectorWalCompactBytes()) scheduleCompact();
+    }
+
+    private void scheduleCompact() {
+        if (!compacting.compareAndSet(false, true)) return;
+        compactor.submit(() -> {
+            try {
+                compact();
+            } catch (Exception e) {
+                log.warn("[向量库-文件] 预写日志压缩失败，旧日志段保留待下次压缩或启动时回放", e);
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    /**
+     * 持锁导出文档并切换日志段，锁外写快照，成功后删除旧段。
+     */
+    private void compact() throws IOException {
+        long start = System.currentTimeMillis();
+        Path path = Path.of(voiceProperties.getVectorStorePath()).toAbsolutePath();
+        List<VectorDocument> docs;
+        long generation;
+        persistLock.lock();
+        try {
+            docs = store.documents();
+            generation = wal.rotate();
+        } finally {
+            persistLock.unlock();
+        }
+        writeSnapshot(path, docs);
+        wal.deleteBefore(generation);
+        log.info("[向量库-文件] 预写日志已压缩为快照: 文档数={}, 耗时 {} ms", docs.size(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    @PreDestroy
+    public void shutdown() {
+        store.close();
+        if (compactor != null) compactor.shutdown();
+        if (wal != null) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                log.warn("[向量库-文件] 预写日志关闭失败", e);
+            }
+        }
+    }
+
     @Override
     public void add(VectorDocument doc) {
         if (doc == null || doc.getId() == null) return;
-        store.put(doc.getId(), doc);
-        saveToFile();
+        commit(() -> store.put(doc), w -> w.appendPut(doc));
     }
 
     @Override
     public void addAll(List<VectorDocument> docs) {
         if (docs == null) return;
-        for (VectorDocument d : docs) {
-            if (d != null && d.getId() != null) store.put(d.getId(), d);
-        }
-        saveToFile();
+        commit(() -> {
+            for (VectorDocument d : docs) {
+                store.put(d);
+            }
+            return true;
+        }, w -> w.appendPutAll(docs));
     }
 
     @Override
     public void remove(String id) {
-        store.remove(id);
-        saveToFile();
+        // 预写日志先于内存修改，不存在的 id 提前返回，不写日志
+        if (id == null || store.get(id) == null) return;
+        commit(() -> store.remove(id), w -> w.appendDelete(id));
     }
 
     /**
@@ -90,27 +257,26 @@ public class InMemoryVectorStore implements VectorStore {
     @Override
     public void clear() {
         int n = store.size();
-        store.clear();
+        commit(() -> {
+            store.clear();
+            return true;
+        }, VectorWal::appendClear);
         if (n > 0) log.info("[向量库-文件] clear 已清空, 原文档数={}", n);
-        saveToFile();
     }
 
     /**
-     * 按 metadata.source 删除，用于同步设备前清理旧文档。
+     * 按 metadata.source 删除，用于同步设备前清理旧文档。经 source 倒排索引定位，只访问受影响的文档。
      */
     @Override
     public void removeBySource(String source) {
-        if (source == null) return;
-        int before = store.size();
-        store.entrySet().removeIf(e -> {
-            Map<String, Object> m = e.getValue().getMetadata();
-            if (m == null) return false;
-            Object v = m.get("source");
-            return source.equals(v);
-        });
-        int removed = before - store.size();
-        if (removed > 0) log.info("[向量库-文件] removeBySource source={}, 删除数={}", source, removed);
-        saveToFile();
+        // 预写日志先于内存修改，没有该来源的文档时不写日志
+        if (source == null || !store.containsMatching(Filter.eq("source", source))) return;
+        int[] removed = new int[1];
+        commit(() -> {
+            removed[0] = store.removeBySource(source);
+            return removed[0] > 0;
+        }, w -> w.appendRemoveBySource(source));
+        if (removed[0] > 0) log.info("[向量库-文件] removeBySource source={}, 删除数={}", source, removed[0]);
     }
 
     @Override
@@ -118,33 +284,35 @@ public class InMemoryVectorStore implements VectorStore {
         return store.size();
     }
 
+    @Override
+    public List<VectorDocument> documents() {
+        return store.documents();
+    }
+
+    @Override
+    public List<VectorDocument> documents(Filter filter) {
+        return store.documents(filter);
+    }
+
+    @Override
+    public VectorDocument get(String id) {
+        return store.get(id);
+    }
+
     @Override
     public List<SearchResult> search(float[] queryEmbedding, int topK) {
-        if (queryEmbedding == null || store.isEmpty()) return List.of();
-        List<SearchResult> results = new ArrayList<>();
-        for (VectorDocument doc : store.values()) {
-            if (doc.getEmbedding() == null || doc.getEmbedding().length != queryEmbedding.length) continue;
-            double score = cosineSimilarity(queryEmbedding, doc.getEmbedding());
-            results.add(SearchResult.builder()
-                    .document(doc)
-                    .score(score)
-                    .build());
-        }
-        return results.stream()
-                .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
-                .limit(topK)
-                .collect(Collectors.toList());
-    }
-
-    private static double cosineSimilarity(float[] a, float[] b) {
-        if (a == null || b == null || a.length != b.length) return 0;
-        double dot = 0, normA = 0, normB = 0;
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
-        }
-        double denom = Math.sqrt(normA) * Math.sqrt(normB);
-        return denom == 0 ? 0 : dot / denom;
+        if (queryEmbedding == null || store.size() == 0) return List.of();
+        return store.search(queryEmbedding, topK);
+    }
+
+    @Override
+    public List<SearchResult> search(float[] queryEmbedding, int topK, Filter filter) {
+        if (queryEmbedding == null || store.size() == 0) return List.of();
+        return store.search(queryEmbedding, topK, filter);
+    }
+
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queryEmbeddings, int topK, Filter filter) {
+        return store.searchBatch(queryEmbeddings, topK, filter);
     }
 }
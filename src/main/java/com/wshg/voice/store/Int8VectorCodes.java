@@ -0,0 +1,142 @@
+package com.wshg.voice.store;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 单位向量的 int8 标量量化编码：每个维度独立的 offset/scale，u[d] ≈ offset[d] + scale[d] * (code[d] + 128)。
+ * 编码按槽位存放在定长 byte[] 块中，每维 1 字节，约为 float 的 1/4。
+ * <p>
+ * 近似内积：q·u ≈ C + s * Σ qCode[d] * code[d]，其中 C 只与查询有关，qCode 为按 s 量化后的 q[d]*scale[d]，
+ * 因此逐文档只需一次 int8×int8 的整数点积。每维取值范围取自已有数据的最小/最大值。
+ */
+public class Int8VectorCodes implements VectorCodes<Int8VectorCodes.Query> {
+
+    private final List<byte[]> blocks = new ArrayList<>();
+    private final BitSet encoded = new BitSet();
+    private int dimension;
+    private float[] offset;
+    private float[] scale;
+
+    @Override
+    public boolean isCalibrated() {
+        return offset != null;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public void calibrate(Stats stats) {
+        float[] min = stats.min();
+        float[] max = stats.max();
+        int dim = min.length;
+        float[] newScale = new float[dim];
+        for (int d = 0; d < dim; d++) {
+            newScale[d] = Math.max((max[d] - min[d]) / 255f, 1e-9f);
+        }
+        if (dim != dimension) {
+            blocks.clear();
+            encoded.clear();
+        }
+        dimension = dim;
+        offset = min.clone();
+        scale = newScale;
+    }
+
+    @Override
+    public void encode(int slot, float[] unit) {
+        if (!isCalibrated() || unit.length != dimension) {
+            // 槽位可能曾存放其他向量，不留旧编码
+            encoded.clear(slot);
+            return;
+        }
+        int block = slot / VectorArena.SLOTS_PER_BLOCK;
+        while (blocks.size() <= block) {
+            blocks.add(new byte[VectorArena.SLOTS_PER_BLOCK * dimension]);
+        }
+        byte[] codes = blocks.get(block);
+        int base = (slot % VectorArena.SLOTS_PER_BLOCK) * dimension;
+        for (int d = 0; d < dimension; d++) {
+            int c = Math.round((unit[d] - offset[d]) / scale[d]) - 128;
+            codes[base + d] = (byte) Math.max(-128, Math.min(127, c));
+        }
+        encoded.set(slot);
+    }
+
+    @Override
+    public boolean isEncoded(int slot) {
+        return encoded.get(slot);
+    }
+
+    @Override
+    public void release(int slot) {
+        encoded.clear(slot);
+    }
+
+    /**
+     * 预处理查询，得到整数点积所需的查询编码与还原系数。
+     */
+    @Override
+    public Query prepare(float[] unitQuery) {
+        double constant = 0;
+        float[] weights = new float[dimension];
+        float maxAbs = 0;
+        for (int d = 0; d < dimension; d++) {
+            constant += unitQuery[d] * (offset[d] + 128 * scale[d]);
+            weights[d] = unitQuery[d] * scale[d];
+            maxAbs = Math.max(maxAbs, Math.abs(weights[d]));
+        }
+        float factor = maxAbs == 0 ? 1f : maxAbs / 127f;
+        byte[] codes = new byte[dimension];
+        for (int d = 0; d < dimension; d++) {
+            codes[d] = (byte) Math.round(weights[d] / factor);
+        }
+        return new Query(codes, constant, factor);
+    }
+
+    /**
+     * 近似余弦：查询编码与槽位编码的 int8 整数点积，再线性还原。
+     */
+    @Override
+    public double approximate(int slot, Query query) {
+        byte[] codes = blocks.get(slot / VectorArena.SLOTS_PER_BLOCK);
+        int base = (slot % VectorArena.SLOTS_PER_BLOCK) * dimension;
+        byte[] q = query.codes;
+        int acc = 0;
+        for (int d = 0; d < q.length; d++) {
+            acc += q[d] * codes[base + d];
+        }
+        return query.constant + (double) query.factor * acc;
+    }
+
+    @Override
+    public void clear() {
+        blocks.clear();
+        encoded.clear();
+        dimension = 0;
+        offset = null;
+        scale = null;
+    }
+
+    /** 已分配的编码字节数 */
+    public long allocatedBytes() {
+        return (long) blocks.size() * VectorArena.SLOTS_PER_BLOCK * dimension;
+    }
+
+    /** 预处理后的查询 */
+    public static final class Query {
+        private final byte[] codes;
+        private final double constant;
+        private final float factor;
+
+        private Query(byte[] codes, double constant, float factor) {
+            this.codes = codes;
+            this.constant = constant;
+            this.factor = factor;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.wshg.voice.store;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * IVF（倒排文件）近似索引：用球面 k-means 把向量划分到 nlist 个质心对应的倒排列表，
+ * 检索时只扫描与查询最相近的 nprobe 个列表。写入只需与各质心比较一次后追加到列表末尾，代价很低。
+ * <p>
+ * 未训练（文档太少或刚清空）时所有向量在同一个列表里，检索即全量扫描。
+ * 训练分四步以便在后台进行：持读锁 {@link #snapshot(int)} 拷贝训练样本、不持锁 {@link Snapshot#train()} 迭代质心、
+ * 分块持读锁 {@link #assign(Clustering, int, int)} 把快照内节点分配到最近质心、持写锁 {@link #apply(Clustering)}。
+ * 本类只保存倒排列表，节点向量经 {@link NodeVectors} 从底层索引读取；删除为软删除，重新训练时从列表中清除。
+ * 本类不加锁，由 {@link IvfVectorStore} 负责读写锁与向量锁。
+ */
+public class IvfIndex {
+
+    private static final int KMEANS_ITERATIONS = 10;
+    /** 每个质心的训练样本数 */
+    private static final int SAMPLES_PER_LIST = 64;
+
+    private final NodeVectors vectors;
+    private final BitSet deleted = new BitSet();
+    private int nodeCount;
+    private int deletedCount;
+
+    /** 单位化质心；null 表示未训练 */
+    private float[][] centroids;
+    private int[][] lists = {new int[64]};
+    private int[] listSizes = new int[1];
+    private int maxListSize;
+    /** 上次训练时的存活文档数、最长列表长度、累计删除数 */
+    private int trainedSize;
+    private int trainedMaxListSize;
+    private int trainedDeletedCount;
+    /** 每次清空递增，用于丢弃清空前开始的后台训练结果 */
+    private int epoch;
+
+    public IvfIndex(NodeVectors vectors) {
+        this.vectors = vectors;
+    }
+
+    /**
+     * 追加节点，返回节点号。调用方须已让 {@link NodeVectors} 能按该节点号读到向量，unitVector 为其单位化向量。
+     */
+    public int add(float[] unitVector) {
+        int node = nodeCount++;
+        int list = centroids == null ? 0 : nearestCentroid(centroids, unitVector);
+        append(list, node);
+        return node;
+    }
+
+    public void markDeleted(int node) {
+        if (node < 0 || node >= nodeCount || deleted.get(node)) return;
+        deleted.set(node);
+        deletedCount++;
+    }
+
+    public void reset() {
+        deleted.clear();
+        nodeCount = 0;
+        deletedCount = 0;
+        centroids = null;
+        lists = new int[][]{new int[64]};
+        listSizes = new int[1];
+        maxListSize = 0;
+        trainedSize = 0;
+        trainedMaxListSize = 0;
+        trainedDeletedCount = 0;
+        epoch++;
+    }
+
+    /**
+     * 丢弃全部节点但保留质心与训练基准，用于按新节点号重新插入存活文档（压缩软删除留下的空洞），无需重新训练。
+     * 与 {@link #reset()} 一样递增 epoch，丢弃按旧节点号进行中的后台训练结果。
+     */
+    public void resetNodes() {
+        float[][] keptCentroids = centroids;
+        int keptTrainedSize = trainedSize;
+        int keptTrainedMaxListSize = trainedMaxListSize;
+        reset();
+        if (keptCentroids == null) return;
+        centroids = keptCentroids;
+        lists = new int[keptCentroids.length][];
+        for (int c = 0; c < lists.length; c++) lists[c] = new int[8];
+        listSizes = new int[keptCentroids.length];
+        trainedSize = keptTrainedSize;
+        trainedMaxListSize = keptTrainedMaxListSize;
+    }
+
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    public boolean isTrained() {
+        return centroids != null;
+    }
+
+    public int listCount() {
+        return lists.length;
+    }
+
+    /**
+     * 是否需要（重新）训练：未训练且文档数达到 minTrainSize；或文档数比上次训练翻倍；
+     * 或最长列表比训练后翻倍且超过平均长度的 imbalanceRatio 倍；或训练后新增的软删除数超过存活数。
+     * 只与上次训练时的状态比较，避免 k-means 本身的不均衡导致反复训练。
+     */
+    public boolean needsRetrain(int minTrainSize, double imbalanceRatio) {
+        int live = nodeCount - deletedCount;
+        if (centroids == null) return live >= minTrainSize;
+        if (live >= 2 * trainedSize) return true;
+        if (deletedCount - trainedDeletedCount > live) return true;
+        double avg = (double) live / lists.length;
+        return maxListSize > 2 * trainedMaxListSize && maxListSize > imbalanceRatio * avg;
+    }
+
+    /**
+     * 检索与查询最相似的 topK 个未删除节点，结果按相似度降序。
+     */
+    public List<ScoredNode> search(float[] unitQuery, int topK, int nprobe) {
+        TopKHeap top = new TopKHeap(topK);
+        for (int list : probeLists(unitQuery, nprobe)) {
+            int[] members = lists[list];
+            int n = listSizes[list];
+            for (int i = 0; i < n; i++) {
+                int node = members[i];
+                if (deleted.get(node)) continue;
+                double score = vectors.cosine(node, unitQuery);
+                if (!Double.isNaN(score)) top.offer(node, score);
+            }
+        }
+        top.sortDescending();
+        List<ScoredNode> results = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) results.add(new ScoredNode(top.slot(i), top.score(i)));
+        return results;
+    }
+
+    private int[] probeLists(float[] unitQuery, int nprobe) {
+        if (centroids == null) return new int[]{0};
+        TopKHeap nearest = new TopKHeap(Math.min(Math.max(1, nprobe), centroids.length));
+        for (int c = 0; c < centroids.length; c++) nearest.offer(c, dot(centroids[c], unitQuery));
+        int[] probe = new int[nearest.size()];
+        for (int i = 0; i < probe.length; i++) probe[i] = nearest.slot(i);
+        return probe;
+    }
+
+    /**
+     * 记录当前状态并拷贝 k-means 样本的单位向量供后台训练（调用方持有读锁与向量锁）。
+     * nlist ≤ 0 时按 sqrt(存活数) 自动取值。无存活节点时返回 null。
+     */
+    public Snapshot snapshot(int nlist) {
+        int[] live = IntStream.range(0, nodeCount).filter(n -> !deleted.get(n)).toArray();
+        if (live.length == 0) return null;
+        if (nlist <= 0) nlist = (int) Math.sqrt(live.length);
+        nlist = Math.max(1, Math.min(Math.min(nlist, 4096), live.length));
+
+        Random random = new Random(live.length);
+        for (int i = live.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = live[i];
+            live[i] = live[j];
+            live[j] = t;
+        }
+        List<float[]> points = new ArrayList<>(Math.min(live.length, nlist * SAMPLES_PER_LIST));
+        for (int i = 0; i < live.length && points.size() < nlist * SAMPLES_PER_LIST; i++) {
+            float[] unit = vectors.unitVector(live[i]);
+            if (unit != null) points.add(unit);
+        }
+        if (points.isEmpty()) return null;
+        return new Snapshot(points.toArray(new float[0][]), Math.min(nlist, points.size()), nodeCount, epoch, random);
+    }
+
+    /**
+     * 把快照内 [from, to) 范围的存活节点分配到新质心（调用方持有读锁与向量锁）。
+     * 分块调用，让写入与检索能在块之间插入；期间索引被清空时返回 false。
+     */
+    public boolean assign(Clustering clustering, int from, int to) {
+        if (clustering.epoch != epoch) return false;
+        IntStream.range(from, Math.min(to, clustering.assignment.length)).parallel()
+                .filter(n -> !deleted.get(n))
+                .forEach(n -> clustering.assignment[n] = nearestCentroid(clustering.centroids, n));
+        return true;
+    }
+
+    /**
+     * 用新的聚类结果重建倒排列表（调用方持有写锁与向量锁）。快照之后新增的节点在此处补分配，
+     * 快照之后删除的节点不再进入列表。若期间索引被清空则丢弃结果并返回 false。
+     */
+    public boolean apply(Clustering clustering) {
+        if (clustering.epoch != epoch) return false;
+        int nlist = clustering.centroids.length;
+        int[][] newLists = new int[nlist][];
+        int[] newSizes = new int[nlist];
+        int[] counts = new int[nlist];
+        int[] assignment = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            if (deleted.get(node)) {
+                assignment[node] = -1;
+                continue;
+            }
+            int list = node < clustering.assignment.length && clustering.assignment[node] >= 0
+                    ? clustering.assignment[node]
+                    : nearestCentroid(clustering.centroids, node);
+            assignment[node] = list;
+            counts[list]++;
+        }
+        for (int c = 0; c < nlist; c++) newLists[c] = new int[Math.max(8, counts[c])];
+        for (int node = 0; node < nodeCount; node++) {
+            int list = assignment[node];
+            if (list >= 0) newLists[list][newSizes[list]++] = node;
+        }
+        centroids = clustering.centroids;
+        lists = newLists;
+        listSizes = newSizes;
+        maxListSize = Arrays.stream(newSizes).max().orElse(0);
+        trainedSize = nodeCount - deletedCount;
+        trainedMaxListSize = maxListSize;
+        trainedDeletedCount = deletedCount;
+        return true;
+    }
+
+    private void append(int list, int node) {
+        int size = listSizes[list];
+        if (size == lists[list].length) lists[list] = Arrays.copyOf(lists[list], size * 2);
+        lists[list][size] = node;
+        listSizes[list] = size + 1;
+        if (size + 1 > maxListSize) maxListSize = size + 1;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) return -1;
+        return VectorKernels.dot(a, b);
+    }
+
+    /** 节点向量最近的质心；向量已释放时归入列表 0 */
+    private int nearestCentroid(float[][] centroids, int node) {
+        int best = 0;
+        double bestSim = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroids.length; c++) {
+            double s = vectors.cosine(node, centroids[c]);
+            if (s > bestSim) {
+                bestSim = s;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static int nearestCentroid(float[][] centroids, float[] unit) {
+        int best = 0;
+        double bestSim = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroids.length; c++) {
+            double s = dot(centroids[c], unit);
+            if (s > bestSim) {
+                bestSim = s;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** 训练快照：k-means 样本的单位向量副本 + 快照时的节点数 */
+    public static final class Snapshot {
+        private final float[][] points;
+        private final int nlist;
+        private final int nodeCount;
+        private final int epoch;
+        private final Random random;
+
+        private Snapshot(float[][] points, int nlist, int nodeCount, int epoch, Random random) {
+            this.points = points;
+            this.nlist = nlist;
+            this.nodeCount = nodeCount;
+            this.epoch = epoch;
+            this.random = random;
+        }
+
+        /**
+         * 球面 k-means：在样本上迭代质心，返回尚未分配节点的聚类结果，节点分配见 {@link IvfIndex#assign}。
+         * 只读取样本副本，耗时较长，不要持锁调用。
+         */
+        public Clustering train() {
+            int dim = points[0].length;
+            float[][] centroids = new float[nlist][];
+            for (int c = 0; c < nlist; c++) centroids[c] = points[c].clone();
+            int[] labels = new int[points.length];
+            for (int iter = 0; iter < KMEANS_ITERATIONS; iter++) {
+                float[][] current = centroids;
+                IntStream.range(0, points.length).parallel()
+                        .forEach(i -> labels[i] = nearestCentroid(current, points[i]));
+                double[][] sums = new double[nlist][dim];
+                int[] counts = new int[nlist];
+                for (int i = 0; i < points.length; i++) {
+                    double[] sum = sums[labels[i]];
+                    float[] p = points[i];
+                    if (p.length != dim) continue;
+                    for (int d = 0; d < dim; d++) sum[d] += p[d];
+                    counts[labels[i]]++;
+                }
+                float[][] next = new float[nlist][];
+                for (int c = 0; c < nlist; c++) {
+                    if (counts[c] == 0) {
+                        // 空簇：随机取一个样本点重新播种
+                        next[c] = points[random.nextInt(points.length)].clone();
+                        continue;
+                    }
+                    float[] centroid = new float[dim];
+                    for (int d = 0; d < dim; d++) centroid[d] = (float) sums[c][d];
+                    next[c] = VectorArena.normalize(centroid);
+                }
+                centroids = next;
+            }
+            int[] assignment = new int[nodeCount];
+            Arrays.fill(assignment, -1);
+            return new Clustering(centroids, assignment, epoch);
+        }
+    }
+
+    /** 训练结果：质心 + 快照内节点的列表分配（-1 表示未分配） */
+    public static final class Clustering {
+        private final float[][] centroids;
+        private final int[] assignment;
+        private final int epoch;
+
+        private Clustering(float[][] centroids, int[] assignment, int epoch) {
+            this.centroids = centroids;
+            this.assignment = assignment;
+            this.epoch = epoch;
+        }
+
+        public int listCount() {
+            return centroids.length;
+        }
+
+        /** 快照时的节点数，{@link IvfIndex#assign} 按此范围分块 */
+        public int nodeCount() {
+            return assignment.length;
+        }
+    }
+}
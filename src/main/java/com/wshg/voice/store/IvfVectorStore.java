@@ -0,0 +1,151 @@
+package com.wshg.voice.store;
+
+import com.wshg.voice.config.VoiceProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * IVF 近似检索向量库（voice.vector-store-type=ivf），适合写多读少的语料（如每轮对话都写入的聊天记录）。
+ * 持久化委托给底层向量库（voice.vector-index-backend=mysql|file）。
+ * 写入时只与各质心比较一次；检索只扫描 nprobe 个倒排列表。
+ * 文档量翻倍、列表严重不均衡或软删除过多时，在后台线程重新训练质心，训练期间检索与写入照常进行。
+ * 重新训练只重排倒排列表，不回收节点号；软删除数超过存活数的 1/{@value #REBUILD_LIVE_FRACTION} 时用存活文档重建，
+ * 压缩节点号并保留已训练的质心。
+ */
+@Slf4j
+public class IvfVectorStore extends AnnVectorStore {
+
+    /** 文档数达到该值才训练质心，之前为全量扫描 */
+    private static final int MIN_TRAIN_SIZE = 1024;
+    /** 软删除数至少达到该值才考虑重建 */
+    private static final int MIN_DELETED_FOR_REBUILD = 1000;
+    /** 软删除数超过存活数的几分之一时重建 */
+    private static final int REBUILD_LIVE_FRACTION = 4;
+    /** 训练后分配节点时每块的节点数，块之间释放读锁 */
+    private static final int ASSIGN_CHUNK = 16_384;
+
+    private final int nlist;
+    private final int nprobe;
+    private final double rebalanceRatio;
+    private final IvfIndex index = new IvfIndex(vectors);
+
+    private final ExecutorService trainer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ivf-trainer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean training = new AtomicBoolean();
+
+    public IvfVectorStore(VectorStore backing, VoiceProperties voiceProperties) {
+        super(backing);
+        this.nlist = voiceProperties.getIvfLists();
+        this.nprobe = voiceProperties.getIvfNprobe();
+        this.rebalanceRatio = voiceProperties.getIvfRebalanceRatio();
+    }
+
+    @Override
+    protected String indexName() {
+        return "IVF";
+    }
+
+    @Override
+    protected int insertNode(float[] unitVector) {
+        int node = index.add(unitVector);
+        if (index.needsRetrain(MIN_TRAIN_SIZE, rebalanceRatio)) scheduleRetrain();
+        return node;
+    }
+
+    @Override
+    protected void deleteNode(int node) {
+        index.markDeleted(node);
+        if (index.needsRetrain(MIN_TRAIN_SIZE, rebalanceRatio)) scheduleRetrain();
+    }
+
+    @Override
+    protected List<ScoredNode> searchNodes(float[] unitQuery, int topK) {
+        return index.search(unitQuery, topK, nprobe);
+    }
+
+    @Override
+    protected void resetIndex() {
+        index.reset();
+    }
+
+    @Override
+    protected void resetForRebuild() {
+        index.resetNodes();
+    }
+
+    /**
+     * 软删除的节点仍占用文档数组、底层槽位映射，并在倒排列表中被逐个跳过；
+     * IVF 重建只需把存活节点追加回已训练的列表，代价低，因此比 HNSW 更早重建以压缩节点号。
+     */
+    @Override
+    protected boolean needsRebuild() {
+        int deleted = index.deletedCount();
+        return deleted >= MIN_DELETED_FOR_REBUILD && (long) deleted * REBUILD_LIVE_FRACTION > liveCount();
+    }
+
+    private void scheduleRetrain() {
+        if (!training.compareAndSet(false, true)) return;
+        trainer.submit(() -> {
+            try {
+                retrain();
+            } catch (Exception e) {
+                log.warn("[向量库-IVF] 后台训练失败", e);
+            } finally {
+                training.set(false);
+            }
+        });
+    }
+
+    private void retrain() {
+        long start = System.currentTimeMillis();
+        IvfIndex.Snapshot snapshot;
+        lock.readLock().lock();
+        lockVectors();
+        try {
+            snapshot = index.snapshot(nlist);
+        } finally {
+            unlockVectors();
+            lock.readLock().unlock();
+        }
+        if (snapshot == null) return;
+        IvfIndex.Clustering clustering = snapshot.train();
+        for (int from = 0; from < clustering.nodeCount(); from += ASSIGN_CHUNK) {
+            lock.readLock().lock();
+            lockVectors();
+            try {
+                if (!index.assign(clustering, from, from + ASSIGN_CHUNK)) return;
+            } finally {
+                unlockVectors();
+                lock.readLock().unlock();
+            }
+        }
+        boolean applied;
+        lock.writeLock().lock();
+        lockVectors();
+        try {
+            applied = index.apply(clustering);
+        } finally {
+            unlockVectors();
+            lock.writeLock().unlock();
+        }
+        if (applied) {
+            log.info("[向量库-IVF] 质心训练完成: nlist={}, 文档数={}, 耗时 {} ms",
+                    clustering.listCount(), size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void shutdown() {
+        trainer.shutdownNow();
+        super.shutdown();
+    }
+}
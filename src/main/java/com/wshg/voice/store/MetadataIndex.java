@@ -0,0 +1,73 @@
+package com.wshg.voice.store;
+
+import java.util.*;
+
+/**
+ * 元数据倒排索引：对配置的键（voice.vector-filter-keys）维护 键 → 取值 → 槽位位图，
+ * 检索时先按过滤条件求出候选槽位，再只对候选打分。本类不加锁，由 {@link FlatVectorIndex} 负责并发控制。
+ */
+public class MetadataIndex {
+
+    private final Set<String> keys;
+    private final Map<String, Map<String, BitSet>> postings = new HashMap<>();
+
+    public MetadataIndex(Collection<String> keys) {
+        this.keys = keys == null ? Set.of() : Set.copyOf(keys);
+    }
+
+    public void add(int slot, Map<String, Object> metadata) {
+        if (metadata == null) return;
+        for (String key : keys) {
+            Object v = metadata.get(key);
+            if (v == null) continue;
+            postings.computeIfAbsent(key, k -> new HashMap<>())
+                    .computeIfAbsent(String.valueOf(v), k -> new BitSet())
+                    .set(slot);
+        }
+    }
+
+    public void remove(int slot, Map<String, Object> metadata) {
+        if (metadata == null) return;
+        for (String key : keys) {
+            Object v = metadata.get(key);
+            if (v == null) continue;
+            Map<String, BitSet> byValue = postings.get(key);
+            if (byValue == null) continue;
+            BitSet bits = byValue.get(String.valueOf(v));
+            if (bits == null) continue;
+            bits.clear(slot);
+            if (bits.isEmpty()) byValue.remove(String.valueOf(v));
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+    }
+
+    /** 过滤条件是否全部落在已索引的键上（否则调用方需逐条校验其余条件） */
+    public boolean covers(Filter filter) {
+        return keys.containsAll(filter.conditions().keySet());
+    }
+
+    /**
+     * 按已索引键求候选槽位：同键取值的位图求并、不同键之间求交，再与 live 求交。
+     * 过滤条件不含已索引键时返回 live 本身（调用方不得修改）。
+     */
+    public BitSet candidates(Filter filter, BitSet live) {
+        BitSet result = null;
+        for (Map.Entry<String, Set<String>> e : filter.conditions().entrySet()) {
+            if (!keys.contains(e.getKey())) continue;
+            Map<String, BitSet> byValue = postings.getOrDefault(e.getKey(), Map.of());
+            BitSet union = new BitSet();
+            for (String value : e.getValue()) {
+                BitSet bits = byValue.get(value);
+                if (bits != null) union.or(bits);
+            }
+            if (result == null) result = union;
+            else result.and(union);
+        }
+        if (result == null) return live;
+        result.and(live);
+        return result;
+    }
+}
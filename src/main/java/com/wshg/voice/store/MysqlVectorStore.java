@@ -2,55 +2,148 @@ package com.wshg.voice.store;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.wshg.voice.entity.VectorDocumentEntity;
+import com.wshg.voice.config.VoiceProperties;
 import com.wshg.voice.repository.VectorDocumentRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
 import jakarta.annotation.PostConstruct;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * 向量库 MySQL 实现：启动时从表加载，增删改同步到 MySQL。
+ * 向量库 MySQL 实现：启动时从表加载到内存索引（{@link VectorIndex}），增删改同步到 MySQL。
+ * 向量以小端 float32 存入 embedding BLOB 列；写入走 JdbcTemplate 批量 upsert，不经过 Hibernate 实体。
+ * 启动时把只有 embedding_json 的旧行迁移到 BLOB 列（见 {@link #migrateEmbeddingColumn()}）。
  */
 @Slf4j
 public class MysqlVectorStore implements VectorStore {
 
+    private static final String UPSERT_SQL = "INSERT INTO vector_document (id, text, embedding, embedding_json, metadata_json, source, created_at) "
+            + "VALUES (?, ?, ?, NULL, ?, ?, ?) ON DUPLICATE KEY UPDATE text = VALUES(text), embedding = VALUES(embedding), "
+            + "embedding_json = NULL, metadata_json = VALUES(metadata_json), source = VALUES(source)";
+    private static final String LOAD_PAGE_SQL = "SELECT id, text, embedding, embedding_json, metadata_json FROM vector_document "
+            + "WHERE id > ? ORDER BY id LIMIT ?";
+    /** 迁移旧行时每页行数 */
+    private static final int MIGRATE_PAGE_SIZE = 1000;
+
     private final VectorDocumentRepository repository;
+    private final JdbcTemplate jdbcTemplate;
     private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int loadPageSize;
+    private final int loadParallelism;
 
-    private final Map<String, VectorDocument> cache = new ConcurrentHashMap<>();
+    private final VectorIndex cache;
 
-    public MysqlVectorStore(VectorDocumentRepository repository, ObjectMapper objectMapper) {
+    public MysqlVectorStore(VectorDocumentRepository repository, JdbcTemplate jdbcTemplate,
+                            ObjectMapper objectMapper, VoiceProperties voiceProperties) {
         this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
         this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, voiceProperties.getVectorJdbcBatchSize());
+        this.loadPageSize = Math.max(1, voiceProperties.getVectorLoadPageSize());
+        this.loadParallelism = voiceProperties.getVectorLoadParallelism() > 0
+                ? voiceProperties.getVectorLoadParallelism() : Runtime.getRuntime().availableProcessors();
+        this.cache = VectorIndex.create(voiceProperties);
+    }
+
+    /** 内存索引，供近似检索库按槽位共享向量 */
+    VectorIndex index() {
+        return cache;
+    }
+
+    @Override
+    @PreDestroy
+    public void shutdown() {
+        cache.close();
     }
 
+    /**
+     * 按主键 keyset 分页流式加载：主线程顺序读取各页原始行，解码（BLOB → float[]、元数据 JSON）并写入索引的工作
+     * 交给 ForkJoinPool 并行执行；在途页数受 Semaphore 限制，且不保留已提交任务的引用，解码完的页即可回收，
+     * 堆上只保留少量未解码的页。最后取回全部许可等待收尾；任一页解码失败或加载线程被中断时停止读取并抛出，
+     * 不把部分数据当作完整加载。定期输出加载进度。
+     */
     @PostConstruct
     public void loadFromDb() {
-        repository.findAll().forEach(e -> {
-            VectorDocument doc = toDocument(e);
-            if (doc != null) cache.put(doc.getId(), doc);
-        });
-        log.info("向量库已从 MySQL 加载: {} 条", cache.size());
+        migrateEmbeddingColumn();
+        long start = System.currentTimeMillis();
+        Long total = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM vector_document", Long.class);
+        ForkJoinPool pool = new ForkJoinPool(loadParallelism);
+        AtomicLong loaded = new AtomicLong();
+        int permits = loadParallelism * 2;
+        Semaphore inFlight = new Semaphore(permits);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long lastLog = start;
+        try {
+            String lastId = "";
+            while (failure.get() == null) {
+                List<RawRow> page = jdbcTemplate.query(LOAD_PAGE_SQL, (rs, i) -> new RawRow(rs.getString(1), rs.getString(2),
+                        rs.getBytes(3), rs.getString(4), rs.getString(5)), lastId, loadPageSize);
+                if (page.isEmpty()) break;
+                lastId = page.get(page.size() - 1).id();
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        for (RawRow row : page) {
+                            VectorDocument doc = toDocument(row);
+                            if (doc != null && cache.put(doc)) loaded.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                long now = System.currentTimeMillis();
+                if (now - lastLog >= 2000) {
+                    lastLog = now;
+                    log.info("[向量库-MySQL] 加载中: {}/{} 条, 已用 {} ms", loaded.get(), total, now - start);
+                }
+                if (page.size() < loadPageSize) break;
+            }
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            pool.shutdown();
+        }
+        if (failure.get() instanceof InterruptedException) {
+            throw new IllegalStateException("向量库从 MySQL 加载被中断, 仅加载 " + cache.size() + "/" + total + " 条", failure.get());
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("向量库从 MySQL 加载失败", failure.get());
+        }
+        log.info("向量库已从 MySQL 加载: {} 条, 耗时 {} ms, 并行度 {}", cache.size(), System.currentTimeMillis() - start, loadParallelism);
     }
 
-    private VectorDocument toDocument(VectorDocumentEntity e) {
-        if (e == null || e.getId() == null) return null;
-        float[] emb = parseEmbedding(e.getEmbeddingJson());
+    /** 加载时读取的原始行，解码在工作线程中进行 */
+    private record RawRow(String id, String text, byte[] embedding, String embeddingJson, String metadataJson) {}
+
+    private VectorDocument toDocument(RawRow row) {
+        if (row.id() == null) return null;
+        float[] emb = row.embedding() != null ? EmbeddingBytes.fromBytes(row.embedding()) : parseEmbedding(row.embeddingJson());
         if (emb == null) return null;
-        Map<String, Object> meta = parseMetadata(e.getMetadataJson());
-        return VectorDocument.of(e.getId(), e.getText(), emb, meta);
+        Map<String, Object> meta = parseMetadata(row.metadataJson());
+        return VectorDocument.of(row.id(), row.text(), emb, meta);
     }
 
+    /** 旧 JSON 向量直接解析为 float[]，不经过装箱列表 */
     private float[] parseEmbedding(String json) {
         if (json == null || json.isBlank()) return null;
         try {
-            List<Number> list = objectMapper.readValue(json, new TypeReference<>() {});
-            if (list == null || list.isEmpty()) return null;
-            float[] a = new float[list.size()];
-            for (int i = 0; i < list.size(); i++) a[i] = list.get(i).floatValue();
-            return a;
+            float[] a = objectMapper.readValue(json, float[].class);
+            return a == null || a.length == 0 ? null : a;
         } catch (Exception ex) {
             return null;
         }
@@ -65,48 +158,101 @@ public class MysqlVectorStore implements VectorStore {
         }
     }
 
-    private VectorDocumentEntity toEntity(VectorDocument doc) {
-        if (doc == null || doc.getId() == null) return null;
-        String embJson;
+    /**
+     * 确保 embedding BLOB 列存在、embedding_json 可为空，并把只有 embedding_json 的旧行按主键分页迁移到 BLOB 列。
+     * 迁移后 embedding_json 置空。非 MySQL 或无权限时只记录警告，读取仍兼容 JSON 列。
+     */
+    void migrateEmbeddingColumn() {
         try {
-            embJson = objectMapper.writeValueAsString(doc.getEmbedding() != null ? doc.getEmbedding() : new float[0]);
+            Integer hasBlob = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.COLUMNS "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'vector_document' AND COLUMN_NAME = 'embedding'", Integer.class);
+            if (hasBlob == null || hasBlob == 0) {
+                jdbcTemplate.execute("ALTER TABLE vector_document ADD COLUMN embedding LONGBLOB NULL");
+                log.info("[向量库-MySQL] 已添加 embedding BLOB 列");
+            }
+            List<String> nullable = jdbcTemplate.queryForList("SELECT IS_NULLABLE FROM information_schema.COLUMNS "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'vector_document' AND COLUMN_NAME = 'embedding_json'", String.class);
+            if (!nullable.isEmpty() && "NO".equalsIgnoreCase(nullable.get(0))) {
+                jdbcTemplate.execute("ALTER TABLE vector_document MODIFY embedding_json TEXT NULL");
+                log.info("[向量库-MySQL] embedding_json 列已改为可空");
+            }
+            String lastId = "";
+            int migrated = 0;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT id, embedding_json FROM vector_document "
+                        + "WHERE id > ? AND embedding IS NULL AND embedding_json IS NOT NULL ORDER BY id LIMIT ?", lastId, MIGRATE_PAGE_SIZE);
+                if (rows.isEmpty()) break;
+                List<Object[]> args = new ArrayList<>(rows.size());
+                for (Map<String, Object> row : rows) {
+                    float[] emb = parseEmbedding((String) row.get("embedding_json"));
+                    if (emb != null) args.add(new Object[]{EmbeddingBytes.toBytes(emb), row.get("id")});
+                }
+                jdbcTemplate.batchUpdate("UPDATE vector_document SET embedding = ?, embedding_json = NULL WHERE id = ?", args);
+                migrated += args.size();
+                lastId = (String) rows.get(rows.size() - 1).get("id");
+                log.info("[向量库-MySQL] embedding_json → BLOB 迁移中: 已迁移 {} 行", migrated);
+            }
+            if (migrated > 0) log.info("[向量库-MySQL] embedding_json → BLOB 迁移完成: {} 行", migrated);
         } catch (Exception e) {
-            return null;
+            log.warn("[向量库-MySQL] embedding BLOB 列迁移失败，继续兼容读取 embedding_json", e);
         }
-        String metaJson = null;
-        if (doc.getMetadata() != null && !doc.getMetadata().isEmpty()) {
-            try {
-                metaJson = objectMapper.writeValueAsString(doc.getMetadata());
-            } catch (Exception ignored) {}
+    }
+
+    private String metadataJson(VectorDocument doc) {
+        if (doc.getMetadata() == null || doc.getMetadata().isEmpty()) return null;
+        try {
+            return objectMapper.writeValueAsString(doc.getMetadata());
+        } catch (Exception e) {
+            return null;
         }
-        String source = doc.getMetadata() != null && doc.getMetadata().get("source") != null
+    }
+
+    private static String source(VectorDocument doc) {
+        return doc.getMetadata() != null && doc.getMetadata().get("source") != null
                 ? String.valueOf(doc.getMetadata().get("source")) : null;
-        return VectorDocumentEntity.builder()
-                .id(doc.getId())
-                .text(doc.getText())
-                .embeddingJson(embJson)
-                .metadataJson(metaJson)
-                .source(source)
-                .createdAt(java.time.Instant.now())
-                .build();
+    }
+
+    /**
+     * 按 batchSize 分批 upsert，返回实际写入的文档（跳过 id 或向量为空的文档）。
+     */
+    private List<VectorDocument> upsert(List<VectorDocument> docs) {
+        List<VectorDocument> valid = new ArrayList<>(docs.size());
+        for (VectorDocument d : docs) {
+            if (d != null && d.getId() != null && d.getEmbedding() != null) valid.add(d);
+        }
+        if (valid.isEmpty()) return valid;
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, valid, batchSize, (ps, d) -> {
+            ps.setString(1, d.getId());
+            ps.setString(2, d.getText());
+            ps.setBytes(3, EmbeddingBytes.toBytes(d.getEmbedding()));
+            ps.setString(4, metadataJson(d));
+            ps.setString(5, source(d));
+            ps.setTimestamp(6, now);
+        });
+        return valid;
     }
 
     @Override
     public void add(VectorDocument doc) {
         if (doc == null || doc.getId() == null) return;
-        VectorDocumentEntity e = toEntity(doc);
-        if (e == null) return;
-        repository.save(e);
-        cache.put(doc.getId(), doc);
-        log.debug("[向量库-MySQL] 添加 id={}, source={}", doc.getId(), e.getSource());
+        if (upsert(List.of(doc)).isEmpty()) return;
+        cache.put(doc);
+        log.debug("[向量库-MySQL] 添加 id={}, source={}", doc.getId(), source(doc));
     }
 
+    /**
+     * 批量写入：分批 JDBC upsert（开启 rewriteBatchedStatements 时每批一条多行 INSERT），再写入内存索引。
+     */
     @Override
     public void addAll(List<VectorDocument> docs) {
-        if (docs == null) return;
-        for (VectorDocument d : docs) {
-            add(d);
+        if (docs == null || docs.isEmpty()) return;
+        long start = System.currentTimeMillis();
+        List<VectorDocument> written = upsert(docs);
+        for (VectorDocument d : written) {
+            cache.put(d);
         }
+        log.info("[向量库-MySQL] 批量写入 {} 条, 耗时 {} ms", written.size(), System.currentTimeMillis() - start);
     }
 
     @Override
@@ -118,12 +264,8 @@ public class MysqlVectorStore implements VectorStore {
     @Override
     public void removeBySource(String source) {
         if (source == null) return;
-        List<VectorDocumentEntity> list = repository.findBySource(source);
-        int n = list.size();
-        for (VectorDocumentEntity e : list) {
-            cache.remove(e.getId());
-        }
-        repository.deleteBySource(source);
+        int n = repository.deleteBySource(source);
+        cache.removeBySource(source);
         log.info("[向量库-MySQL] removeBySource source={}, 删除数={}", source, n);
     }
 
@@ -140,30 +282,35 @@ public class MysqlVectorStore implements VectorStore {
         return cache.size();
     }
 
+    @Override
+    public List<VectorDocument> documents() {
+        return cache.documents();
+    }
+
+    @Override
+    public List<VectorDocument> documents(Filter filter) {
+        return cache.documents(filter);
+    }
+
+    @Override
+    public VectorDocument get(String id) {
+        return cache.get(id);
+    }
+
     @Override
     public List<SearchResult> search(float[] queryEmbedding, int topK) {
-        if (queryEmbedding == null || cache.isEmpty()) return List.of();
-        List<SearchResult> results = new ArrayList<>();
-        for (VectorDocument doc : cache.values()) {
-            if (doc.getEmbedding() == null || doc.getEmbedding().length != queryEmbedding.length) continue;
-            double score = cosineSimilarity(queryEmbedding, doc.getEmbedding());
-            results.add(SearchResult.builder().document(doc).score(score).build());
-        }
-        return results.stream()
-                .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
-                .limit(topK)
-                .collect(Collectors.toList());
-    }
-
-    private static double cosineSimilarity(float[] a, float[] b) {
-        if (a == null || b == null || a.length != b.length) return 0;
-        double dot = 0, normA = 0, normB = 0;
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
-        }
-        double denom = Math.sqrt(normA) * Math.sqrt(normB);
-        return denom == 0 ? 0 : dot / denom;
+        if (queryEmbedding == null || cache.size() == 0) return List.of();
+        return cache.search(queryEmbedding, topK);
+    }
+
+    @Override
+    public List<SearchResult> search(float[] queryEmbedding, int topK, Filter filter) {
+        if (queryEmbedding == null || cache.size() == 0) return List.of();
+        return cache.search(queryEmbedding, topK, filter);
+    }
+
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queryEmbeddings, int topK, Filter filter) {
+        return cache.searchBatch(queryEmbeddings, topK, filter);
     }
 }
@@ -0,0 +1,14 @@
+package com.wshg.voice.store;
+
+/**
+ * 近似索引读取节点向量的入口，由 {@link AnnVectorStore} 提供：节点向量按槽位从底层精确索引读取，
+ * 近似索引自身不再保存向量。调用方须在 {@link AnnVectorStore} 的锁与向量锁内调用。
+ */
+interface NodeVectors {
+
+    /** 节点向量与单位化查询的余弦相似度；向量已释放或维度不一致时返回 NaN */
+    double cosine(int node, float[] unitQuery);
+
+    /** 节点向量的单位化副本；向量已释放时返回 null */
+    float[] unitVector(int node);
+}
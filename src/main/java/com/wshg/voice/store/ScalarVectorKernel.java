@@ -0,0 +1,32 @@
+package com.wshg.voice.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 标量点积：逐维相乘、double 累加。未启用 jdk.incubator.vector 时使用。
+ */
+public final class ScalarVectorKernel implements VectorKernel {
+
+    @Override
+    public double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    @Override
+    public double dot(ByteBuffer block, int byteOffset, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < b.length; i++) {
+            dot += block.getFloat(byteOffset + i * Float.BYTES) * b[i];
+        }
+        return dot;
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,6 @@
+package com.wshg.voice.store;
+
+/**
+ * 近似检索索引返回的候选：节点号 + 与查询的余弦相似度。
+ */
+public record ScoredNode(int node, double score) {}
@@ -11,5 +11,6 @@ import lombok.Data;
 public class SearchResult {
 
     private VectorDocument document;
-    private double score;  // 相似度得分，余弦相似度 [-1, 1]
+    private double score;  // 相似度得分，余弦相似度 [-1, 1]；混合检索中仅被字面命中的文档为 0
+    private double lexicalScore;  // 混合检索时的 BM25 得分，0 表示未被字面命中
 }
@@ -0,0 +1,541 @@
+package com.wshg.voice.store;
+
+import com.wshg.voice.config.VoiceProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分段写时复制索引（LSM 式）：若干只读的已封存段 + 一个小的可变段，整体以不可变快照经 volatile 引用发布。
+ * 检索只读取发布时的快照，不加锁，也不会看到写了一半的状态；写入（及合并结果的发布）由一把锁串行化。
+ * <p>
+ * 可变段只追加：已发布的快照只读取其 size 之前的槽位，数组扩容时旧快照仍引用旧数组。
+ * 删除与覆盖写不修改段内数据，而是复制该段的存活位图生成新版本（墓碑），覆盖写的新版本追加到可变段。
+ * 可变段达到 voice.vector-segment-size 条时封存并建立元数据倒排索引；封存段数超过 voice.vector-segment-merge-factor
+ * 时后台线程把存活文档最少的若干段合并为一段，单段删除过半时也会重写以回收空间。合并期间发生的删除在发布前补到新段上。
+ * <p>
+ * 向量保存在堆内（直接引用文档的 embedding 并缓存模长倒数），不支持 vector-off-heap 与 vector-quantization。
+ */
+@Slf4j
+public class SegmentedVectorIndex implements VectorIndex {
+
+    /** 分块扫描时一块的槽位数，与 {@link FlatVectorIndex#TILE_SLOTS} 相同 */
+    private static final int TILE_SLOTS = FlatVectorIndex.TILE_SLOTS;
+
+    private final int segmentSize;
+    private final int mergeFactor;
+    private final Set<String> indexedKeys;
+    private final ForkJoinPool searchPool;
+    private final int parallelThreshold;
+    private final ExecutorService merger;
+    private final AtomicBoolean merging = new AtomicBoolean();
+
+    /** 串行化写入与合并结果的发布；检索不加锁 */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /** id → 所在段与槽位，只在 writeLock 内访问 */
+    private final Map<String, Location> locations = new HashMap<>();
+    private long nextSegmentId;
+    /** 可变段的底层数组，只在 writeLock 内追加 */
+    private VectorDocument[] memDocs;
+    private float[] memInvNorms;
+    private volatile Snapshot snapshot;
+
+    private record Location(long segmentId, int slot) {
+    }
+
+    /** 某一时刻的全部段；size 为存活文档总数 */
+    private record Snapshot(List<Segment> sealed, Segment memtable, int size) {
+
+        List<Segment> segments() {
+            List<Segment> all = new ArrayList<>(sealed.size() + 1);
+            all.addAll(sealed);
+            all.add(memtable);
+            return all;
+        }
+    }
+
+    /**
+     * 段：槽位 [0, size) 上的文档与模长倒数，live 标记未删除的槽位。发布后不再修改，删除时复制 live 生成同 id 的新版本。
+     * metadata 为封存时建立的元数据倒排索引，可变段为 null（检索时逐条校验 filter）。
+     */
+    private static final class Segment {
+        final long id;
+        final VectorDocument[] docs;
+        final float[] invNorms;
+        final int size;
+        final BitSet live;
+        final int liveCount;
+        final MetadataIndex metadata;
+
+        Segment(long id, VectorDocument[] docs, float[] invNorms, int size, BitSet live, MetadataIndex metadata) {
+            this.id = id;
+            this.docs = docs;
+            this.invNorms = invNorms;
+            this.size = size;
+            this.live = live;
+            this.liveCount = live.cardinality();
+            this.metadata = metadata;
+        }
+
+        Segment withLive(BitSet live) {
+            return new Segment(id, docs, invNorms, size, live, metadata);
+        }
+    }
+
+    public SegmentedVectorIndex(VoiceProperties voiceProperties) {
+        this.segmentSize = Math.max(64, voiceProperties.getVectorSegmentSize());
+        this.mergeFactor = Math.max(2, voiceProperties.getVectorSegmentMergeFactor());
+        Set<String> keys = new HashSet<>(voiceProperties.getVectorFilterKeys());
+        keys.add("source");
+        this.indexedKeys = Set.copyOf(keys);
+        int parallelism = voiceProperties.getVectorSearchParallelism() > 0
+                ? voiceProperties.getVectorSearchParallelism() : Runtime.getRuntime().availableProcessors();
+        this.searchPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.parallelThreshold = voiceProperties.getVectorParallelThreshold();
+        this.merger = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "vector-segment-merger");
+            t.setDaemon(true);
+            return t;
+        });
+        if (voiceProperties.isVectorOffHeap() || !"none".equalsIgnoreCase(voiceProperties.getVectorQuantization())) {
+            log.warn("[向量索引-分段] 分段索引不支持 vector-off-heap / vector-quantization，已忽略");
+        }
+        this.snapshot = new Snapshot(List.of(), newMemtable(), 0);
+    }
+
+    /** 新建空的可变段（需持有 writeLock 或在构造时调用） */
+    private Segment newMemtable() {
+        memDocs = new VectorDocument[64];
+        memInvNorms = new float[64];
+        return new Segment(nextSegmentId++, memDocs, memInvNorms, 0, new BitSet(), null);
+    }
+
+    @Override
+    public boolean put(VectorDocument doc) {
+        if (doc == null || doc.getId() == null) return false;
+        float[] embedding = doc.getEmbedding();
+        if (embedding == null || embedding.length == 0) {
+            log.warn("[向量索引-分段] 拒绝写入 id={}, 向量为空", doc.getId());
+            return false;
+        }
+        double norm = VectorArena.norm(embedding);
+        float invNorm = norm == 0 ? 0f : (float) (1.0 / norm);
+        Snapshot published;
+        writeLock.lock();
+        try {
+            Snapshot snap = snapshot;
+            List<Segment> sealed = snap.sealed();
+            Segment mem = snap.memtable();
+            int size = snap.size();
+            Location old = locations.get(doc.getId());
+            if (old != null) {
+                if (old.segmentId() == mem.id) {
+                    mem = mem.withLive(cleared(mem.live, old.slot()));
+                } else {
+                    sealed = tombstone(sealed, old);
+                }
+                size--;
+            }
+            int slot = mem.size;
+            if (slot >= memDocs.length) {
+                int cap = Math.max(slot + 1, memDocs.length * 2);
+                memDocs = Arrays.copyOf(memDocs, cap);
+                memInvNorms = Arrays.copyOf(memInvNorms, cap);
+            }
+            memDocs[slot] = doc;
+            memInvNorms[slot] = invNorm;
+            BitSet live = (BitSet) mem.live.clone();
+            live.set(slot);
+            mem = new Segment(mem.id, memDocs, memInvNorms, slot + 1, live, null);
+            locations.put(doc.getId(), new Location(mem.id, slot));
+            if (mem.size >= segmentSize) {
+                List<Segment> next = new ArrayList<>(sealed);
+                next.add(seal(mem));
+                sealed = List.copyOf(next);
+                mem = newMemtable();
+            }
+            published = new Snapshot(sealed, mem, size + 1);
+            snapshot = published;
+        } finally {
+            writeLock.unlock();
+        }
+        maybeMerge(published);
+        return true;
+    }
+
+    /** 封存可变段：沿用其 id 与数组（之后不再追加），建立元数据倒排索引 */
+    private Segment seal(Segment mem) {
+        MetadataIndex metadata = new MetadataIndex(indexedKeys);
+        for (int slot = mem.live.nextSetBit(0); slot >= 0; slot = mem.live.nextSetBit(slot + 1)) {
+            metadata.add(slot, mem.docs[slot].getMetadata());
+        }
+        return new Segment(mem.id, mem.docs, mem.invNorms, mem.size, mem.live, metadata);
+    }
+
+    private static BitSet cleared(BitSet live, int slot) {
+        BitSet copy = (BitSet) live.clone();
+        copy.clear(slot);
+        return copy;
+    }
+
+    /** 在封存段列表中给 location 处的槽位打墓碑，返回新列表 */
+    private static List<Segment> tombstone(List<Segment> sealed, Location location) {
+        List<Segment> next = new ArrayList<>(sealed);
+        for (int i = 0; i < next.size(); i++) {
+            Segment seg = next.get(i);
+            if (seg.id == location.segmentId()) {
+                next.set(i, seg.withLive(cleared(seg.live, location.slot())));
+                break;
+            }
+        }
+        return List.copyOf(next);
+    }
+
+    @Override
+    public boolean remove(String id) {
+        if (id == null) return false;
+        writeLock.lock();
+        try {
+            Location old = locations.remove(id);
+            if (old == null) return false;
+            Snapshot snap = snapshot;
+            Segment mem = snap.memtable();
+            if (old.segmentId() == mem.id) {
+                snapshot = new Snapshot(snap.sealed(), mem.withLive(cleared(mem.live, old.slot())), snap.size() - 1);
+            } else {
+                snapshot = new Snapshot(tombstone(snap.sealed(), old), mem, snap.size() - 1);
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 按 metadata.source 删除：封存段经 source 倒排位图定位，可变段逐条比对；每个受影响的段只复制一次存活位图。
+     */
+    @Override
+    public int removeBySource(String source) {
+        if (source == null) return 0;
+        Filter filter = Filter.eq("source", source);
+        writeLock.lock();
+        try {
+            Snapshot snap = snapshot;
+            int removed = 0;
+            List<Segment> sealed = new ArrayList<>(snap.sealed().size());
+            for (Segment seg : snap.sealed()) {
+                BitSet hit = seg.metadata.candidates(filter, seg.live);
+                if (hit.isEmpty()) {
+                    sealed.add(seg);
+                    continue;
+                }
+                removed += dropSlots(seg, hit);
+                BitSet live = (BitSet) seg.live.clone();
+                live.andNot(hit);
+                sealed.add(seg.withLive(live));
+            }
+            Segment mem = snap.memtable();
+            BitSet hit = new BitSet();
+            for (int slot = mem.live.nextSetBit(0); slot >= 0; slot = mem.live.nextSetBit(slot + 1)) {
+                if (filter.matches(mem.docs[slot].getMetadata())) hit.set(slot);
+            }
+            if (!hit.isEmpty()) {
+                removed += dropSlots(mem, hit);
+                BitSet live = (BitSet) mem.live.clone();
+                live.andNot(hit);
+                mem = mem.withLive(live);
+            }
+            if (removed > 0) snapshot = new Snapshot(List.copyOf(sealed), mem, snap.size() - removed);
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int dropSlots(Segment seg, BitSet slots) {
+        int n = 0;
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            locations.remove(seg.docs[slot].getId());
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public void close() {
+        merger.shutdown();
+        if (searchPool != null) searchPool.shutdown();
+    }
+
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            locations.clear();
+            snapshot = new Snapshot(List.of(), newMemtable(), 0);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public List<VectorDocument> documents() {
+        Snapshot snap = snapshot;
+        List<VectorDocument> list = new ArrayList<>(snap.size());
+        for (Segment seg : snap.segments()) {
+            for (int slot = seg.live.nextSetBit(0); slot >= 0; slot = seg.live.nextSetBit(slot + 1)) {
+                list.add(seg.docs[slot]);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public List<VectorDocument> documents(Filter filter) {
+        if (filter == null || filter.isEmpty()) return documents();
+        List<VectorDocument> list = new ArrayList<>();
+        for (Segment seg : snapshot.segments()) {
+            BitSet candidates = seg.metadata != null ? seg.metadata.candidates(filter, seg.live) : seg.live;
+            boolean residual = seg.metadata == null || !seg.metadata.covers(filter);
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                if (residual && !filter.matches(seg.docs[slot].getMetadata())) continue;
+                list.add(seg.docs[slot]);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public boolean containsMatching(Filter filter) {
+        if (filter == null || filter.isEmpty()) return size() > 0;
+        for (Segment seg : snapshot.segments()) {
+            BitSet candidates = seg.metadata != null ? seg.metadata.candidates(filter, seg.live) : seg.live;
+            boolean residual = seg.metadata == null || !seg.metadata.covers(filter);
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                if (!residual || filter.matches(seg.docs[slot].getMetadata())) return true;
+            }
+        }
+        return false;
+    }
+
+    /** 按 id 读取需查位置表，短暂持有写锁 */
+    @Override
+    public VectorDocument get(String id) {
+        if (id == null) return null;
+        writeLock.lock();
+        try {
+            Location location = locations.get(id);
+            if (location == null) return null;
+            for (Segment seg : snapshot.segments()) {
+                if (seg.id == location.segmentId()) return seg.docs[location.slot()];
+            }
+            return null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(float[] queryEmbedding, int topK, Filter filter) {
+        if (queryEmbedding == null || topK <= 0) return List.of();
+        return searchBatch(Collections.singletonList(queryEmbedding), topK, filter).get(0);
+    }
+
+    /**
+     * 在当前快照上检索：每段各自分块扫描、每条查询一个 Top-K 堆，再合并各段结果。
+     * 存活文档数达到 voice.vector-parallel-threshold 时各段并行扫描。
+     */
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queries, int topK, Filter filter) {
+        if (queries == null || queries.isEmpty()) return List.of();
+        List<List<SearchResult>> results = new ArrayList<>(queries.size());
+        Snapshot snap = snapshot;
+        if (topK <= 0 || snap.size() == 0) {
+            for (int i = 0; i < queries.size(); i++) results.add(List.of());
+            return results;
+        }
+        float[][] unitQueries = new float[queries.size()][];
+        for (int i = 0; i < unitQueries.length; i++) {
+            if (queries.get(i) != null) unitQueries[i] = VectorArena.normalize(queries.get(i));
+        }
+        Filter active = filter != null && !filter.isEmpty() ? filter : null;
+        List<Segment> segments = snap.segments();
+        TopKHeap[][] perSegment = new TopKHeap[segments.size()][];
+        if (searchPool != null && snap.size() >= parallelThreshold && segments.size() > 1) {
+            List<ForkJoinTask<TopKHeap[]>> tasks = new ArrayList<>(segments.size());
+            for (Segment seg : segments) {
+                tasks.add(searchPool.submit(() -> scanSegment(seg, active, unitQueries, topK)));
+            }
+            for (int i = 0; i < tasks.size(); i++) perSegment[i] = tasks.get(i).join();
+        } else {
+            for (int i = 0; i < segments.size(); i++) perSegment[i] = scanSegment(segments.get(i), active, unitQueries, topK);
+        }
+        for (int q = 0; q < unitQueries.length; q++) {
+            if (unitQueries[q] == null) {
+                results.add(List.of());
+                continue;
+            }
+            // 各段候选按 (段序号, 名次) 编号后放入同一个堆，得分相同时先出现的段优先
+            List<VectorDocument> found = new ArrayList<>();
+            TopKHeap top = new TopKHeap(topK);
+            for (int i = 0; i < segments.size(); i++) {
+                TopKHeap part = perSegment[i][q];
+                for (int j = 0; j < part.size(); j++) {
+                    top.offer(found.size(), part.score(j));
+                    found.add(segments.get(i).docs[part.slot(j)]);
+                }
+            }
+            top.sortDescending();
+            List<SearchResult> list = new ArrayList<>(top.size());
+            for (int i = 0; i < top.size(); i++) {
+                list.add(SearchResult.builder()
+                        .document(found.get(top.slot(i)))
+                        .score(top.score(i))
+                        .build());
+            }
+            results.add(list);
+        }
+        return results;
+    }
+
+    /** 对一个段做分块扫描：每块至多 TILE_SLOTS 个候选槽位，块内向量依次与每条查询打分 */
+    private static TopKHeap[] scanSegment(Segment seg, Filter filter, float[][] unitQueries, int k) {
+        TopKHeap[] tops = new TopKHeap[unitQueries.length];
+        for (int q = 0; q < tops.length; q++) tops[q] = new TopKHeap(k);
+        BitSet candidates = seg.live;
+        Filter residual = filter;
+        if (filter != null && seg.metadata != null) {
+            candidates = seg.metadata.candidates(filter, seg.live);
+            if (seg.metadata.covers(filter)) residual = null;
+        }
+        int[] tile = new int[TILE_SLOTS];
+        int slot = candidates.nextSetBit(0);
+        while (slot >= 0 && slot < seg.size) {
+            int n = 0;
+            while (n < TILE_SLOTS && slot >= 0 && slot < seg.size) {
+                if (residual == null || residual.matches(seg.docs[slot].getMetadata())) tile[n++] = slot;
+                slot = candidates.nextSetBit(slot + 1);
+            }
+            for (int q = 0; q < unitQueries.length; q++) {
+                float[] query = unitQueries[q];
+                if (query == null) continue;
+                for (int i = 0; i < n; i++) {
+                    float[] v = seg.docs[tile[i]].getEmbedding();
+                    if (v.length != query.length) continue;
+                    tops[q].offer(tile[i], VectorKernels.dot(v, query) * seg.invNorms[tile[i]]);
+                }
+            }
+        }
+        return tops;
+    }
+
+    private void maybeMerge(Snapshot snap) {
+        if (pickMerge(snap.sealed()) == null) return;
+        if (!merging.compareAndSet(false, true)) return;
+        try {
+            merger.submit(() -> {
+                try {
+                    while (mergeOnce()) {
+                        // 连续合并直到不再满足合并条件
+                    }
+                } catch (Exception e) {
+                    log.warn("[向量索引-分段] 段合并失败", e);
+                } finally {
+                    merging.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 索引已关闭，不再合并
+            merging.set(false);
+        }
+    }
+
+    /**
+     * 选出待合并的段：封存段数超过合并因子时取存活文档最少的 mergeFactor 段；否则取一个删除过半的段单独重写。
+     */
+    private List<Segment> pickMerge(List<Segment> sealed) {
+        if (sealed.size() > mergeFactor) {
+            List<Segment> sorted = new ArrayList<>(sealed);
+            sorted.sort(Comparator.comparingInt(s -> s.liveCount));
+            return sorted.subList(0, mergeFactor);
+        }
+        for (Segment seg : sealed) {
+            if (seg.liveCount * 2 < seg.size) return List.of(seg);
+        }
+        return null;
+    }
+
+    /**
+     * 合并一次：锁外复制选中段的存活文档并建索引，锁内把合并期间的删除补到新段上再发布。
+     * 选中的段已不在当前快照中（期间被 clear）时放弃本次结果。
+     */
+    private boolean mergeOnce() {
+        long start = System.currentTimeMillis();
+        List<Segment> chosen = pickMerge(snapshot.sealed());
+        if (chosen == null) return false;
+        int total = 0;
+        for (Segment seg : chosen) total += seg.liveCount;
+        VectorDocument[] docs = new VectorDocument[total];
+        float[] invNorms = new float[total];
+        int[] fromSegment = new int[total];
+        int[] fromSlot = new int[total];
+        MetadataIndex metadata = new MetadataIndex(indexedKeys);
+        int n = 0;
+        for (int i = 0; i < chosen.size(); i++) {
+            Segment seg = chosen.get(i);
+            for (int slot = seg.live.nextSetBit(0); slot >= 0; slot = seg.live.nextSetBit(slot + 1)) {
+                docs[n] = seg.docs[slot];
+                invNorms[n] = seg.invNorms[slot];
+                fromSegment[n] = i;
+                fromSlot[n] = slot;
+                metadata.add(n, docs[n].getMetadata());
+                n++;
+            }
+        }
+        BitSet live = new BitSet(total);
+        live.set(0, total);
+        writeLock.lock();
+        try {
+            Snapshot cur = snapshot;
+            Map<Long, Segment> currentById = new HashMap<>();
+            for (Segment seg : cur.sealed()) currentById.put(seg.id, seg);
+            Segment[] current = new Segment[chosen.size()];
+            for (int i = 0; i < chosen.size(); i++) {
+                current[i] = currentById.get(chosen.get(i).id);
+                if (current[i] == null) return false;
+            }
+            for (int i = 0; i < total; i++) {
+                if (!current[fromSegment[i]].live.get(fromSlot[i])) live.clear(i);
+            }
+            Segment merged = new Segment(nextSegmentId++, docs, invNorms, total, live, metadata);
+            for (int i = live.nextSetBit(0); i >= 0; i = live.nextSetBit(i + 1)) {
+                locations.put(docs[i].getId(), new Location(merged.id, i));
+            }
+            Set<Long> replaced = new HashSet<>();
+            for (Segment seg : chosen) replaced.add(seg.id);
+            List<Segment> sealed = new ArrayList<>(cur.sealed().size());
+            for (Segment seg : cur.sealed()) {
+                if (!replaced.contains(seg.id)) sealed.add(seg);
+            }
+            if (merged.liveCount > 0) sealed.add(merged);
+            snapshot = new Snapshot(List.copyOf(sealed), cur.memtable(), cur.size());
+            log.debug("[向量索引-分段] 合并 {} 段 → 1 段, 存活文档数={}, 当前段数={}, 耗时 {} ms",
+                    chosen.size(), merged.liveCount, sealed.size(), System.currentTimeMillis() - start);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
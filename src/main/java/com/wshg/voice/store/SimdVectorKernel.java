@@ -0,0 +1,68 @@
+package com.wshg.voice.store;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 基于 jdk.incubator.vector 的 SIMD 点积：按平台首选宽度（AVX2 为 8 路、AVX-512 为 16 路）做 FMA，
+ * 两组累加器交替以掩盖 FMA 延迟，尾部不足一个向量宽度的维度按标量处理。
+ * 只能在启动参数含 --add-modules jdk.incubator.vector 时加载，由 {@link VectorKernels} 通过反射实例化。
+ */
+public final class SimdVectorKernel implements VectorKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    public double dot(float[] a, float[] b) {
+        int n = a.length;
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = n - 2 * LANES; i <= bound; i += 2 * LANES) {
+            acc0 = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), acc0);
+            acc1 = FloatVector.fromArray(SPECIES, a, i + LANES).fma(FloatVector.fromArray(SPECIES, b, i + LANES), acc1);
+        }
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            acc0 = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), acc0);
+        }
+        double dot = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    @Override
+    public double dot(ByteBuffer block, int byteOffset, float[] b) {
+        int n = b.length;
+        ByteOrder order = ByteOrder.nativeOrder();
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = n - 2 * LANES; i <= bound; i += 2 * LANES) {
+            acc0 = FloatVector.fromByteBuffer(SPECIES, block, byteOffset + i * Float.BYTES, order)
+                    .fma(FloatVector.fromArray(SPECIES, b, i), acc0);
+            acc1 = FloatVector.fromByteBuffer(SPECIES, block, byteOffset + (i + LANES) * Float.BYTES, order)
+                    .fma(FloatVector.fromArray(SPECIES, b, i + LANES), acc1);
+        }
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            acc0 = FloatVector.fromByteBuffer(SPECIES, block, byteOffset + i * Float.BYTES, order)
+                    .fma(FloatVector.fromArray(SPECIES, b, i), acc0);
+        }
+        double dot = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            dot += block.getFloat(byteOffset + i * Float.BYTES) * b[i];
+        }
+        return dot;
+    }
+
+    @Override
+    public String toString() {
+        return "SIMD " + SPECIES.vectorBitSize() + "-bit x" + LANES;
+    }
+}
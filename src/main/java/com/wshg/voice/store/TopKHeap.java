@@ -0,0 +1,85 @@
+package com.wshg.voice.store;
+
+/**
+ * 定长 Top-K 小顶堆，元素为 (槽位号, 得分) 原始类型对。
+ * 扫描时每个候选只做一次与堆顶的比较，不分配对象；扫描结束后 {@link #sortDescending()} 原地排序，
+ * 调用方只为最终结果创建 {@link SearchResult}。
+ * 得分相同时槽位号小者优先，保证结果唯一，分区并行扫描合并后与单线程扫描一致。
+ */
+public final class TopKHeap {
+
+    private final int[] slots;
+    private final double[] scores;
+    private int size;
+
+    public TopKHeap(int k) {
+        int cap = Math.max(1, k);
+        this.slots = new int[cap];
+        this.scores = new double[cap];
+    }
+
+    /**
+     * 放入候选；堆满时仅当排在当前第 K 名之前才替换。
+     */
+    public void offer(int slot, double score) {
+        if (size < slots.length) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(score, slot, scores[parent], slots[parent])) break;
+                slots[i] = slots[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            slots[i] = slot;
+            scores[i] = score;
+        } else if (worse(scores[0], slots[0], score, slot)) {
+            siftDown(0, slot, score, size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 原地堆排序为得分降序，之后可用 {@link #slot(int)} / {@link #score(int)} 按名次读取；排序后不可再 offer。
+     */
+    public void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            int slot = slots[end];
+            double score = scores[end];
+            slots[end] = slots[0];
+            scores[end] = scores[0];
+            siftDown(0, slot, score, end);
+        }
+    }
+
+    public int slot(int rank) {
+        return slots[rank];
+    }
+
+    public double score(int rank) {
+        return scores[rank];
+    }
+
+    /** (s1, slot1) 是否排在 (s2, slot2) 之后：得分更低，或得分相同而槽位号更大 */
+    private static boolean worse(double s1, int slot1, double s2, int slot2) {
+        return s1 < s2 || (s1 == s2 && slot1 > slot2);
+    }
+
+    private void siftDown(int i, int slot, double score, int n) {
+        int half = n >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < n && worse(scores[right], slots[right], scores[child], slots[child])) child = right;
+            if (!worse(scores[child], slots[child], score, slot)) break;
+            slots[i] = slots[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        slots[i] = slot;
+        scores[i] = score;
+    }
+}
@@ -0,0 +1,121 @@
+package com.wshg.voice.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外向量区（arena）：所有向量在写入时单位化，按槽位顺序紧凑存放在 direct ByteBuffer 中，
+ * 检索时只需做一次点积即为余弦相似度，且不占用 Java 堆、不产生 GC 压力。
+ * <p>
+ * 内存按块分配，每块固定 {@link #SLOTS_PER_BLOCK} 个槽位、块内连续；扩容时追加新块而不拷贝旧数据，
+ * 也避开了单个 ByteBuffer 2GB 的上限。维度由第一条写入的向量确定。
+ * 本类不加锁，由 {@link FlatVectorIndex} 负责并发控制。
+ */
+public class VectorArena implements VectorStorage {
+
+    static final int SLOTS_PER_BLOCK = 1024;
+
+    private final List<ByteBuffer> blocks = new ArrayList<>();
+    private int dimension;
+
+    @Override
+    public boolean accepts(int dimension) {
+        return dimension > 0 && (this.dimension == 0 || dimension == this.dimension);
+    }
+
+    @Override
+    public void put(int slot, float[] vector) {
+        ByteBuffer buf = block(slot, vector.length);
+        int base = offset(slot);
+        double norm = norm(vector);
+        float inv = norm == 0 ? 0f : (float) (1.0 / norm);
+        for (int i = 0; i < dimension; i++) {
+            buf.putFloat(base + i * Float.BYTES, vector[i] * inv);
+        }
+    }
+
+    /** 直接从缓冲区（如映射的快照文件）单位化写入，不经过堆上的 float[] */
+    @Override
+    public void put(int slot, FloatBuffer vector) {
+        ByteBuffer buf = block(slot, vector.remaining());
+        int base = offset(slot);
+        int from = vector.position();
+        double sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            float x = vector.get(from + i);
+            sum += x * x;
+        }
+        float inv = sum == 0 ? 0f : (float) (1.0 / Math.sqrt(sum));
+        for (int i = 0; i < dimension; i++) {
+            buf.putFloat(base + i * Float.BYTES, vector.get(from + i) * inv);
+        }
+    }
+
+    /** 槽位所在块，不存在时按需分配；首次写入确定维度 */
+    private ByteBuffer block(int slot, int vectorDimension) {
+        if (dimension == 0) dimension = vectorDimension;
+        int block = slot / SLOTS_PER_BLOCK;
+        while (blocks.size() <= block) {
+            blocks.add(ByteBuffer.allocateDirect(SLOTS_PER_BLOCK * dimension * Float.BYTES)
+                    .order(ByteOrder.nativeOrder()));
+        }
+        return blocks.get(block);
+    }
+
+    @Override
+    public void release(int slot) {
+        // 槽位由 FlatVectorIndex 标记为墓碑并回收，数据原地保留，复用时直接覆盖
+    }
+
+    @Override
+    public double cosine(int slot, float[] unitQuery) {
+        if (unitQuery.length != dimension) return Double.NaN;
+        return VectorKernels.dot(blocks.get(slot / SLOTS_PER_BLOCK), offset(slot), unitQuery);
+    }
+
+    @Override
+    public float[] get(int slot) {
+        int block = slot / SLOTS_PER_BLOCK;
+        if (block >= blocks.size()) return null;
+        float[] v = new float[dimension];
+        blocks.get(block).asFloatBuffer().get(offset(slot) / Float.BYTES, v);
+        return v;
+    }
+
+    /** 槽位在所在块内的字节偏移 */
+    private int offset(int slot) {
+        return (slot % SLOTS_PER_BLOCK) * dimension * Float.BYTES;
+    }
+
+    @Override
+    public void clear() {
+        blocks.clear();
+        dimension = 0;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /** 已分配的堆外字节数 */
+    public long allocatedBytes() {
+        return (long) blocks.size() * SLOTS_PER_BLOCK * dimension * Float.BYTES;
+    }
+
+    static double norm(float[] v) {
+        return Math.sqrt(VectorKernels.dot(v, v));
+    }
+
+    /** 返回单位化后的副本；零向量原样返回副本 */
+    static float[] normalize(float[] v) {
+        double norm = norm(v);
+        float[] out = new float[v.length];
+        if (norm == 0) return out;
+        float inv = (float) (1.0 / norm);
+        for (int i = 0; i < v.length; i++) out[i] = v[i] * inv;
+        return out;
+    }
+}
@@ -0,0 +1,37 @@
+package com.wshg.voice.store;
+
+/**
+ * 压缩后的向量编码，供 {@link FlatVectorIndex} 做快速粗排，候选再用全精度向量精排。
+ * 实现：{@link Int8VectorCodes}（int8 标量量化）、{@link BinarySketches}（1-bit 符号草图）。
+ * 实现类不加锁，由 {@link FlatVectorIndex} 负责并发控制。
+ *
+ * @param <Q> 预处理后的查询类型
+ */
+public interface VectorCodes<Q> {
+
+    boolean isCalibrated();
+
+    int dimension();
+
+    /**
+     * 按已有单位向量的每维统计确定编码参数；之后需重新 {@link #encode} 全部槽位。
+     */
+    void calibrate(Stats stats);
+
+    /** 编码槽位上的单位向量；未标定或维度不一致时忽略 */
+    void encode(int slot, float[] unit);
+
+    boolean isEncoded(int slot);
+
+    void release(int slot);
+
+    Q prepare(float[] unitQuery);
+
+    /** 粗排得分，越大越相似 */
+    double approximate(int slot, Q query);
+
+    void clear();
+
+    /** 每维最小值、最大值、均值 */
+    record Stats(float[] min, float[] max, float[] mean) {}
+}
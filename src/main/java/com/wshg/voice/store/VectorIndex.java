@@ -0,0 +1,72 @@
+package com.wshg.voice.store;
+
+import com.wshg.voice.config.VoiceProperties;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * 内存向量索引：{@link InMemoryVectorStore}、{@link MysqlVectorStore} 把全部文档放在其中检索，持久化由外层负责。
+ * 由 voice.vector-index-layout 选择实现：flat 为读写锁保护的槽位式索引（{@link FlatVectorIndex}），
+ * segmented 为不可变段 + 快照发布的无锁读索引（{@link SegmentedVectorIndex}）。
+ */
+public interface VectorIndex {
+
+    static VectorIndex create(VoiceProperties voiceProperties) {
+        if ("segmented".equalsIgnoreCase(voiceProperties.getVectorIndexLayout())) {
+            return new SegmentedVectorIndex(voiceProperties);
+        }
+        return new FlatVectorIndex(voiceProperties);
+    }
+
+    /** 写入或覆盖文档（按 id）；向量为空等无法写入时返回 false */
+    boolean put(VectorDocument doc);
+
+    /**
+     * 写入文档，向量取自缓冲区 [position, limit)（如映射的快照文件），doc 中的 embedding 被忽略；vector 为 null 表示无向量。
+     * 默认拷贝为 float[] 后同 {@link #put(VectorDocument)}；不修改 vector 的位置，也不在返回后继续引用它。
+     */
+    default boolean put(VectorDocument doc, FloatBuffer vector) {
+        float[] embedding = null;
+        if (vector != null) {
+            embedding = new float[vector.remaining()];
+            vector.get(vector.position(), embedding);
+        }
+        return put(VectorDocument.of(doc.getId(), doc.getText(), embedding, doc.getMetadata()));
+    }
+
+    boolean remove(String id);
+
+    /** 按 metadata.source 删除，返回删除数 */
+    int removeBySource(String source);
+
+    void clear();
+
+    int size();
+
+    /** 导出全部完整文档（含 embedding），用于持久化 */
+    List<VectorDocument> documents();
+
+    /** 元数据满足 filter 的完整文档（含 embedding） */
+    List<VectorDocument> documents(Filter filter);
+
+    /** 是否存在元数据满足 filter 的文档，找到第一条即返回，不导出文档 */
+    boolean containsMatching(Filter filter);
+
+    /** 按 id 取完整文档（含 embedding），不存在时返回 null */
+    VectorDocument get(String id);
+
+    default List<SearchResult> search(float[] queryEmbedding, int topK) {
+        return search(queryEmbedding, topK, null);
+    }
+
+    /** filter 为 null 或为空时不过滤 */
+    List<SearchResult> search(float[] queryEmbedding, int topK, Filter filter);
+
+    /** 批量检索，结果与 queries 一一对应（查询向量为 null 时对应空列表） */
+    List<List<SearchResult>> searchBatch(List<float[]> queries, int topK, Filter filter);
+
+    /** 关闭索引自带的检索线程池等资源，由持有它的向量库在关闭时调用；默认无资源可释放 */
+    default void close() {
+    }
+}
@@ -0,0 +1,16 @@
+package com.wshg.voice.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 向量点积内核，所有相似度计算共用，由 {@link VectorKernels} 在启动时选择实现：
+ * 有 jdk.incubator.vector 模块时用 SIMD（{@link SimdVectorKernel}），否则用标量循环（{@link ScalarVectorKernel}）。
+ */
+public interface VectorKernel {
+
+    /** a 与 b 的点积，调用方保证长度相同 */
+    double dot(float[] a, float[] b);
+
+    /** block 中从 byteOffset 起、按本机字节序存放的 b.length 个 float 与 b 的点积 */
+    double dot(ByteBuffer block, int byteOffset, float[] b);
+}
@@ -0,0 +1,65 @@
+package com.wshg.voice.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 全局点积内核入口。类加载时检测 jdk.incubator.vector 模块：存在则实例化 {@link SimdVectorKernel}
+ * 并与标量结果自检一致后启用，否则（或自检失败、运行在不兼容的 JDK 上）回退到 {@link ScalarVectorKernel}。
+ * 启用 SIMD 需在启动参数加 --add-modules jdk.incubator.vector。
+ */
+@Slf4j
+public final class VectorKernels {
+
+    private static final VectorKernel KERNEL = select();
+
+    private VectorKernels() {
+    }
+
+    public static double dot(float[] a, float[] b) {
+        return KERNEL.dot(a, b);
+    }
+
+    public static double dot(ByteBuffer block, int byteOffset, float[] b) {
+        return KERNEL.dot(block, byteOffset, b);
+    }
+
+    public static String name() {
+        return KERNEL.toString();
+    }
+
+    private static VectorKernel select() {
+        ScalarVectorKernel scalar = new ScalarVectorKernel();
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                VectorKernel simd = (VectorKernel) Class.forName("com.wshg.voice.store.SimdVectorKernel")
+                        .getDeclaredConstructor().newInstance();
+                selfTest(simd, scalar);
+                log.info("[向量内核] 使用 {}", simd);
+                return simd;
+            } catch (Throwable e) {
+                log.warn("[向量内核] SIMD 内核不可用，回退为标量实现", e);
+            }
+        } else {
+            log.info("[向量内核] 使用标量实现（启动参数加 --add-modules jdk.incubator.vector 可启用 SIMD）");
+        }
+        return scalar;
+    }
+
+    private static void selfTest(VectorKernel simd, VectorKernel scalar) {
+        float[] a = new float[67];
+        float[] b = new float[67];
+        ByteBuffer block = ByteBuffer.allocateDirect((a.length + 3) * Float.BYTES).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < a.length; i++) {
+            a[i] = (i % 7) - 3f;
+            b[i] = (i % 5) * 0.5f;
+            block.putFloat((i + 3) * Float.BYTES, a[i]);
+        }
+        double expected = scalar.dot(a, b);
+        if (Math.abs(simd.dot(a, b) - expected) > 1e-3 || Math.abs(simd.dot(block, 3 * Float.BYTES, b) - expected) > 1e-3) {
+            throw new IllegalStateException("SIMD 点积自检结果与标量不一致");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.wshg.voice.store;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 向量槽位存储：按槽位号（slot）存取向量，供 {@link FlatVectorIndex} 扫描使用。
+ * 堆内实现直接引用文档原始向量；堆外实现见 {@link VectorArena}。
+ */
+public interface VectorStorage {
+
+    /** 是否能存放该维度的向量，无向量时 dimension 为 -1（堆外实现要求所有向量维度一致） */
+    boolean accepts(int dimension);
+
+    void put(int slot, float[] vector);
+
+    /** 从缓冲区 [position, limit) 写入向量，不修改其位置；默认拷贝为 float[]，堆外实现直接写入 */
+    default void put(int slot, FloatBuffer vector) {
+        float[] v = new float[vector.remaining()];
+        vector.get(vector.position(), v);
+        put(slot, v);
+    }
+
+    /** 释放槽位上的向量，槽位随后可被复用 */
+    void release(int slot);
+
+    /**
+     * 槽位向量与单位化查询向量的余弦相似度；维度不一致时返回 NaN。
+     */
+    double cosine(int slot, float[] unitQuery);
+
+    /** 读取槽位向量（堆外实现返回单位化后的副本） */
+    float[] get(int slot);
+
+    void clear();
+}
@@ -1,5 +1,6 @@
 package com.wshg.voice.store;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -20,5 +21,45 @@ public interface VectorStore {
 
     int size();
 
+    /** 关闭后台线程、检索线程池与日志等资源，之后不再使用；默认无资源可释放 */
+    default void shutdown() {
+    }
+
+    /** 全部文档（含 embedding），用于在其上构建检索索引 */
+    List<VectorDocument> documents();
+
+    /** 元数据满足 filter 的完整文档（含 embedding）；默认遍历全部文档 */
+    default List<VectorDocument> documents(Filter filter) {
+        List<VectorDocument> list = new ArrayList<>();
+        for (VectorDocument doc : documents()) {
+            if (filter == null || filter.matches(doc.getMetadata())) list.add(doc);
+        }
+        return list;
+    }
+
+    /** 按 id 取完整文档（含 embedding），不存在时返回 null；默认遍历全部文档 */
+    default VectorDocument get(String id) {
+        if (id == null) return null;
+        for (VectorDocument doc : documents()) {
+            if (id.equals(doc.getId())) return doc;
+        }
+        return null;
+    }
+
     List<SearchResult> search(float[] queryEmbedding, int topK);
+
+    /** 只在元数据满足 filter 的文档中检索；filter 为 null 时等同 {@link #search(float[], int)} */
+    List<SearchResult> search(float[] queryEmbedding, int topK, Filter filter);
+
+    /**
+     * 批量检索，结果与 queryEmbeddings 一一对应（查询向量为 null 时对应空列表）。
+     * 默认逐条检索；暴力扫描的实现可覆盖为一次分块扫描。
+     */
+    default List<List<SearchResult>> searchBatch(List<float[]> queryEmbeddings, int topK, Filter filter) {
+        List<List<SearchResult>> results = new ArrayList<>(queryEmbeddings.size());
+        for (float[] q : queryEmbeddings) {
+            results.add(q == null ? List.of() : search(q, topK, filter));
+        }
+        return results;
+    }
 }
@@ -0,0 +1,387 @@
+package com.wshg.voice.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 文件向量库的预写日志：每次写入/删除追加一条帧记录 [长度 int | CRC32 int | 负载]，
+ * 由 "vector-wal-sync" 线程成组 fsync——并发写入者在同一次 force 中一起落盘，各自等到覆盖自己记录的那次 force 返回。
+ * <p>
+ * 日志按代分段（{@code <快照文件名>.wal.<代号>}）：压缩时先 {@link #rotate()} 开新段，写完快照后再
+ * {@link #deleteBefore(long)} 删除旧段；快照写失败时旧段保留，下次启动照常回放。
+ * 回放遇到不完整或校验失败的帧（崩溃时写了一半）即停止该段。
+ * <p>
+ * fsync 失败只影响这次 force 覆盖的记录：等待它们的写入者收到异常，之后的写入照常追加，下一次 force 或切段成功即恢复。
+ */
+@Slf4j
+public class VectorWal implements Closeable {
+
+    /** 单帧负载上限，超过视为损坏 */
+    private static final int MAX_FRAME_BYTES = 1 << 28;
+
+    private final Path snapshotPath;
+    private final ObjectMapper objectMapper;
+
+    private final Object monitor = new Object();
+    /** 持有期间不会切换段，保证 force 的通道未被关闭 */
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private FileChannel channel;
+    private long generation;
+    /** 当前段字节数 */
+    private long segmentBytes;
+    /** 累计追加 / 已落盘的逻辑字节数（跨段单调递增） */
+    private long appended;
+    private long synced;
+    /** 最近一次 fsync 失败及其覆盖到的位置，之前的记录是否落盘未知 */
+    private IOException failure;
+    private long failedThrough;
+    private boolean closed;
+    private final Thread flusher;
+
+    /**
+     * 打开新的日志段（代号大于已有段），调用前应已回放并处理掉旧段。
+     */
+    public VectorWal(Path snapshotPath, ObjectMapper objectMapper) throws IOException {
+        this.snapshotPath = snapshotPath;
+        this.objectMapper = objectMapper;
+        List<Path> existing = segments(snapshotPath);
+        this.generation = existing.isEmpty() ? 1 : generationOf(existing.get(existing.size() - 1)) + 1;
+        this.channel = openSegment(generation);
+        this.flusher = new Thread(this::flushLoop, "vector-wal-sync");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /** 日志操作类型，按 ordinal 编码 */
+    public enum Op { PUT, DELETE, REMOVE_BY_SOURCE, CLEAR }
+
+    /** 日志条目：PUT 带完整文档，DELETE / REMOVE_BY_SOURCE 带 id / source */
+    public record Entry(Op op, VectorDocument doc, String key) {}
+
+    public long appendPut(VectorDocument doc) {
+        return append(encode(Op.PUT, doc, null));
+    }
+
+    /** 一次写入整批 PUT 记录：要么全部追加，要么（写失败时）一条都不留；没有可写文档时返回 -1 */
+    public long appendPutAll(List<VectorDocument> docs) {
+        List<byte[]> payloads = new ArrayList<>(docs.size());
+        for (VectorDocument d : docs) {
+            if (d != null && d.getId() != null) payloads.add(encode(Op.PUT, d, null));
+        }
+        return payloads.isEmpty() ? -1 : append(payloads);
+    }
+
+    public long appendDelete(String id) {
+        return append(encode(Op.DELETE, null, id));
+    }
+
+    public long appendRemoveBySource(String source) {
+        return append(encode(Op.REMOVE_BY_SOURCE, null, source));
+    }
+
+    public long appendClear() {
+        return append(encode(Op.CLEAR, null, null));
+    }
+
+    /**
+     * 阻塞到 position 之前的记录全部落盘。覆盖这些记录的 fsync 失败时抛出 {@link UncheckedIOException}；
+     * 等待被中断或日志已关闭而记录未确认落盘时抛出 {@link IllegalStateException}（中断标记保留）。
+     */
+    public void awaitDurable(long position) {
+        synchronized (monitor) {
+            while (synced < position && position > failedThrough && !closed) {
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待预写日志落盘被中断，记录是否落盘未知");
+                }
+            }
+            if (synced >= position) return;
+            if (position <= failedThrough) throw new UncheckedIOException(failure);
+            throw new IllegalStateException("预写日志已关闭，记录是否落盘未知");
+        }
+    }
+
+    /** 当前段字节数，用于判断是否需要压缩 */
+    public long segmentBytes() {
+        synchronized (monitor) {
+            return segmentBytes;
+        }
+    }
+
+    /**
+     * 落盘并关闭当前段、开启下一段，返回新段代号；调用方需保证期间没有并发写入，
+     * 使快照恰好覆盖新段之前的全部记录。
+     */
+    public long rotate() throws IOException {
+        forceLock.lock();
+        try {
+            synchronized (monitor) {
+                channel.force(false);
+                channel.close();
+                synced = appended;
+                failure = null;
+                generation++;
+                channel = openSegment(generation);
+                segmentBytes = 0;
+                monitor.notifyAll();
+                return generation;
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /** 删除代号小于 generation 的旧段（其内容已包含在快照中） */
+    public void deleteBefore(long generation) throws IOException {
+        for (Path segment : segments(snapshotPath)) {
+            if (generationOf(segment) < generation) Files.deleteIfExists(segment);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        forceLock.lock();
+        try {
+            synchronized (monitor) {
+                if (closed) return;
+                closed = true;
+                try {
+                    channel.force(false);
+                    synced = appended;
+                } finally {
+                    channel.close();
+                    monitor.notifyAll();
+                }
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * 按代号顺序回放快照旁的全部日志段，返回回放的条目数。
+     */
+    public static int replay(Path snapshotPath, ObjectMapper objectMapper, Consumer<Entry> consumer) throws IOException {
+        int count = 0;
+        for (Path segment : segments(snapshotPath)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+                while (true) {
+                    byte[] payload = readFrame(in);
+                    if (payload == null) break;
+                    consumer.accept(decode(payload, objectMapper));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** 快照旁已有的日志段，按代号升序 */
+    public static List<Path> segments(Path snapshotPath) throws IOException {
+        Path dir = snapshotPath.getParent();
+        if (dir == null || !Files.isDirectory(dir)) return List.of();
+        String prefix = snapshotPath.getFileName() + ".wal.";
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix))
+                    .filter(p -> p.getFileName().toString().substring(prefix.length()).matches("\\d+"))
+                    .sorted((a, b) -> Long.compare(generationOf(a), generationOf(b)))
+                    .toList();
+        }
+    }
+
+    private static long generationOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+    }
+
+    private FileChannel openSegment(long gen) throws IOException {
+        Path segment = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".wal." + gen);
+        return FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private long append(byte[] payload) {
+        return append(List.of(payload));
+    }
+
+    /**
+     * 把若干帧一次写入当前段。写失败时把段截回写入前的长度（见 {@link #recoverSegment(IOException)}），
+     * 残缺的帧不会挡住之后追加的记录被回放。
+     */
+    private long append(List<byte[]> payloads) {
+        int total = 0;
+        for (byte[] payload : payloads) total += 8 + payload.length;
+        ByteBuffer frames = ByteBuffer.allocate(total);
+        CRC32 crc = new CRC32();
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            frames.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        frames.flip();
+        synchronized (monitor) {
+            if (closed) throw new IllegalStateException("WAL 已关闭");
+            try {
+                while (frames.hasRemaining()) channel.write(frames);
+            } catch (IOException e) {
+                recoverSegment(e);
+                throw new UncheckedIOException(e);
+            }
+            segmentBytes += total;
+            appended += total;
+            monitor.notifyAll();
+            return appended;
+        }
+    }
+
+    /**
+     * 写失败后恢复当前段（调用方持有 monitor）：写入线程被中断时通道会随之关闭（ClosedByInterruptException），
+     * 先重新打开同一段；再截回写入前的长度。恢复期间暂时清除中断标记，否则截断本身又会关闭通道。
+     */
+    private void recoverSegment(IOException cause) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!channel.isOpen()) channel = openSegment(generation);
+            channel.truncate(segmentBytes);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            FileChannel ch;
+            synchronized (monitor) {
+                // fsync 失败后不对同一批记录反复重试，等有新记录追加再 force
+                while ((synced >= appended || appended <= failedThrough) && !closed) {
+                    try {
+                        monitor.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) return;
+                target = appended;
+                ch = channel;
+            }
+            IOException error = null;
+            forceLock.lock();
+            try {
+                if (ch.isOpen()) ch.force(false);
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                forceLock.unlock();
+            }
+            synchronized (monitor) {
+                if (error != null) {
+                    log.warn("[向量库-WAL] fsync 失败", error);
+                    failure = error;
+                    failedThrough = target;
+                } else if (target > synced) {
+                    synced = target;
+                    failure = null;
+                }
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    private byte[] encode(Op op, VectorDocument doc, String key) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(doc != null && doc.getEmbedding() != null
+                    ? 64 + doc.getEmbedding().length * Float.BYTES : 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op.ordinal());
+            if (op == Op.PUT) {
+                writeString(out, doc.getId());
+                writeString(out, doc.getText());
+                writeString(out, doc.getMetadata() == null ? null : objectMapper.writeValueAsString(doc.getMetadata()));
+                float[] emb = doc.getEmbedding();
+                out.writeInt(emb == null ? -1 : emb.length);
+                if (emb != null) {
+                    for (float v : emb) out.writeFloat(v);
+                }
+            } else if (op != Op.CLEAR) {
+                writeString(out, key);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Entry decode(byte[] payload, ObjectMapper objectMapper) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Op op = Op.values()[in.readByte()];
+        if (op == Op.PUT) {
+            String id = readString(in);
+            String text = readString(in);
+            String metaJson = readString(in);
+            int dim = in.readInt();
+            float[] emb = dim < 0 ? null : new float[dim];
+            for (int i = 0; i < dim; i++) emb[i] = in.readFloat();
+            Map<String, Object> metadata = metaJson == null ? null
+                    : objectMapper.readValue(metaJson, new TypeReference<Map<String, Object>>() {});
+            return new Entry(op, VectorDocument.of(id, text, emb, metadata), id);
+        }
+        return new Entry(op, null, op == Op.CLEAR ? null : readString(in));
+    }
+
+    /** 读取一帧负载；到达末尾、帧不完整或校验失败时返回 null */
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length < 0 || length > MAX_FRAME_BYTES) return null;
+            byte[] payload = in.readNBytes(length);
+            if (payload.length < length) return null;
+            CRC32 check = new CRC32();
+            check.update(payload);
+            if ((int) check.getValue() != crc) {
+                log.warn("[向量库-WAL] 日志帧校验失败，忽略其后的记录");
+                return null;
+            }
+            return payload;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) return null;
+        return new String(in.readNBytes(n), StandardCharsets.UTF_8);
+    }
+}